@@ -0,0 +1,118 @@
+package org.esa.snap.slope;
+
+import org.esa.snap.core.datamodel.Band;
+import org.esa.snap.core.datamodel.CrsGeoCoding;
+import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.core.datamodel.ProductData;
+import org.esa.snap.core.gpf.GPF;
+import org.geotools.referencing.CRS;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.media.jai.JAI;
+import javax.media.jai.PlanarImage;
+import java.awt.image.Raster;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the end-to-end throughput of {@code GPF.createProduct("SlopeCalculation", ...)} for a 4096 x 4096 DEM,
+ * that is the computation of all target tiles through GPF and JAI. The operator is initialised before each
+ * invocation and the tile cache is flushed after it. One operation is one pixel and throughput is given per
+ * microsecond, so the scores read as megapixels per second. The tile size, the elevation data type and the
+ * number of JAI worker threads are varied.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xmx4G"})
+@State(Scope.Benchmark)
+public class SlopeCalculationOpBenchmark {
+
+    private static final int WIDTH = 4096;
+    private static final int HEIGHT = 4096;
+
+    @Param({"256", "512", "1024"})
+    public int tileSize;
+
+    @Param({"INT16", "FLOAT32"})
+    public String dataType;
+
+    @Param({"1", "4", "8"})
+    public int parallelism;
+
+    private Product sourceProduct;
+    private Product targetProduct;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        GPF.getDefaultInstance().getOperatorSpiRegistry().addOperatorSpi(new SlopeCalculationOp.Spi());
+        JAI.getDefaultInstance().getTileScheduler().setParallelism(parallelism);
+
+        sourceProduct = new Product("DEM", "dem", WIDTH, HEIGHT);
+        sourceProduct.setPreferredTileSize(tileSize, tileSize);
+        sourceProduct.setSceneGeoCoding(new CrsGeoCoding(CRS.decode("EPSG:32650"), WIDTH, HEIGHT,
+                                                         699960.0, 4000020.0, 30.0, 30.0, 0.0, 0.0));
+        final Random random = new Random(42);
+        final Band elevationBand;
+        if ("INT16".equals(dataType)) {
+            elevationBand = new Band("elevation", ProductData.TYPE_INT16, WIDTH, HEIGHT);
+            final short[] elevationData = new short[WIDTH * HEIGHT];
+            for (int i = 0; i < elevationData.length; i++) {
+                elevationData[i] = (short) (500 + random.nextInt(1000));
+            }
+            elevationBand.setDataElems(elevationData);
+        } else {
+            elevationBand = new Band("elevation", ProductData.TYPE_FLOAT32, WIDTH, HEIGHT);
+            final float[] elevationData = new float[WIDTH * HEIGHT];
+            for (int i = 0; i < elevationData.length; i++) {
+                elevationData[i] = 500.0f + 1000.0f * random.nextFloat();
+            }
+            elevationBand.setDataElems(elevationData);
+        }
+        sourceProduct.addBand(elevationBand);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        sourceProduct.dispose();
+        GPF.getDefaultInstance().getOperatorSpiRegistry().removeOperatorSpi(new SlopeCalculationOp.Spi());
+    }
+
+    @Setup(Level.Invocation)
+    public void setUpInvocation() {
+        final Map<String, Object> parameters = new HashMap<>();
+        targetProduct = GPF.createProduct("SlopeCalculation", parameters, sourceProduct);
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDownInvocation() {
+        targetProduct.dispose();
+        JAI.getDefaultInstance().getTileCache().flush();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(WIDTH * HEIGHT)
+    public Raster[] computeAllBands() {
+        // the slope, aspect and variance tiles are computed together, requesting all slope tiles through the
+        // JAI tile scheduler computes them in parallel
+        final PlanarImage slopeImage = (PlanarImage) targetProduct.getBand(SlopeCalculationOp.SLOPE_BAND_NAME)
+                .getSourceImage().getImage(0);
+        return slopeImage.getTiles();
+    }
+}
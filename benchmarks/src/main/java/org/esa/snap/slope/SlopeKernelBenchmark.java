@@ -0,0 +1,87 @@
+package org.esa.snap.slope;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the row kernel of the {@link TerrainKernel} on its own, computing all of slope, aspect and variance
+ * against computing the slope only. One operation is one pixel and throughput is given per microsecond, so the
+ * scores read as megapixels per second.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SlopeKernelBenchmark {
+
+    private static final int WIDTH = 1024;
+    private static final int HEIGHT = 1024;
+    private static final double PIXEL_SIZE = 30.0;
+
+    @Param({"HORN", "ZEVENBERGEN_THORNE", "EVANS_YOUNG"})
+    public GradientMethod gradientMethod;
+
+    // the vector kernel needs Java 17 and the JVM option --add-modules jdk.incubator.vector
+    @Param({"false"})
+    public boolean vectorKernel;
+
+    private float[] elevation;
+    private float[] slope;
+    private float[] aspect;
+    private float[] variance;
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(42);
+        elevation = new float[(WIDTH + 2) * (HEIGHT + 2)];
+        for (int i = 0; i < elevation.length; i++) {
+            elevation[i] = 500.0f + 1000.0f * random.nextFloat();
+        }
+        slope = new float[WIDTH * HEIGHT];
+        aspect = new float[WIDTH * HEIGHT];
+        variance = new float[WIDTH * HEIGHT];
+        if (vectorKernel && VectorKernel.createIfSupported() == null) {
+            throw new IllegalStateException("The vector kernel is not supported by this JVM");
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(WIDTH * HEIGHT)
+    public float[] computeSlopeAspectVarianceRows() {
+        return computeRows(new TerrainKernel(gradientMethod, WIDTH, slope, aspect, variance, createVectorKernel()));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(WIDTH * HEIGHT)
+    public float[] computeSlopeRows() {
+        return computeRows(new TerrainKernel(gradientMethod, WIDTH, slope, null, null, createVectorKernel()));
+    }
+
+    private VectorKernel createVectorKernel() {
+        return vectorKernel ? VectorKernel.createIfSupported() : null;
+    }
+
+    private float[] computeRows(TerrainKernel kernel) {
+        final int stride = WIDTH + 2;
+        for (int y = 0; y < HEIGHT; y++) {
+            final int center = (y + 1) * stride;
+            kernel.computeRow(elevation, center - stride, center, center + stride, PIXEL_SIZE, PIXEL_SIZE, y * WIDTH);
+        }
+        return slope;
+    }
+}
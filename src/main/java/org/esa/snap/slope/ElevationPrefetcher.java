@@ -0,0 +1,184 @@
+package org.esa.snap.slope;
+
+import org.esa.snap.core.util.SystemUtils;
+
+import java.awt.Dimension;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.DataBuffer;
+import java.awt.image.RenderedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads the elevation tiles needed by the next target tiles ahead of time. When a target tile is computed, the source
+ * image tiles covering the padded source rectangles of the following target tiles, in the row-major order in which
+ * GPF schedules them, are requested on a small pool of I/O threads. The source image keeps them in the JAI tile
+ * cache, where the compute threads find them already decoded.
+ * <p>
+ * The read-ahead is bounded by the number of target tiles and by a memory budget, which should be a fraction of the
+ * JAI tile cache capacity so that prefetched tiles are not evicted before they are used. Requests beyond the queue
+ * capacity are dropped, the tiles are then read by the compute thread as without prefetching.
+ * <p>
+ * The source image tile grid is expected at the image origin, as for all band images.
+ */
+final class ElevationPrefetcher {
+
+    private static final int THREAD_COUNT = 2;
+    private static final int MAX_TILE_COUNT = 4096;
+    private static final AtomicInteger THREAD_NUMBER = new AtomicInteger();
+
+    private final RenderedImage image;
+    private final Rectangle imageBounds;
+    private final Dimension sourceTileSize;
+    private final Dimension targetTileSize;
+    private final int halo;
+    private final int depth;
+    private final int maxTileCount;
+    private final ThreadPoolExecutor executor;
+    // the most recently requested source tiles, not requested again while they are probably cached
+    private final Set<Point> requestedTiles;
+
+    /**
+     * @param image          - the elevation source image
+     * @param targetTileSize - the tile size of the target images
+     * @param halo           - the number of pixels the source rectangles extend beyond the target rectangles
+     * @param depth          - the number of target tiles to read ahead
+     * @param maxBytes       - the memory budget for source tiles read ahead
+     */
+    ElevationPrefetcher(RenderedImage image, Dimension targetTileSize, int halo, int depth, long maxBytes) {
+        this.image = image;
+        this.targetTileSize = targetTileSize;
+        imageBounds = new Rectangle(image.getWidth(), image.getHeight());
+        sourceTileSize = new Dimension(image.getTileWidth(), image.getTileHeight());
+        this.halo = halo;
+        this.depth = depth;
+        final long tileBytes = (long) image.getTileWidth() * image.getTileHeight() *
+                image.getSampleModel().getNumBands() *
+                DataBuffer.getDataTypeSize(image.getSampleModel().getDataType()) / 8;
+        maxTileCount = (int) Math.max(1L, Math.min(MAX_TILE_COUNT, maxBytes / tileBytes));
+        executor = new ThreadPoolExecutor(THREAD_COUNT, THREAD_COUNT, 0L, TimeUnit.MILLISECONDS,
+                                          new ArrayBlockingQueue<>(maxTileCount), ElevationPrefetcher::createThread);
+        requestedTiles = Collections.newSetFromMap(new LinkedHashMap<Point, Boolean>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Point, Boolean> eldest) {
+                return size() > maxTileCount;
+            }
+        });
+    }
+
+    /**
+     * Requests the source tiles of the target tiles following the given one. Returns immediately.
+     *
+     * @param targetRectangle - the rectangle of the target tile being computed
+     */
+    void prefetch(Rectangle targetRectangle) {
+        for (Point tileIndex : getSourceTileIndices(targetRectangle, targetTileSize, halo, depth, imageBounds,
+                                                    sourceTileSize, maxTileCount)) {
+            synchronized (requestedTiles) {
+                if (!requestedTiles.add(tileIndex)) {
+                    continue;
+                }
+            }
+            try {
+                executor.execute(() -> readTile(tileIndex));
+            } catch (RejectedExecutionException e) {
+                // queue full or shut down, the tile is read when needed
+                synchronized (requestedTiles) {
+                    requestedTiles.remove(tileIndex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops the I/O threads, pending requests are dropped.
+     */
+    void dispose() {
+        executor.shutdownNow();
+    }
+
+    private static Thread createThread(Runnable runnable) {
+        final Thread thread = new Thread(runnable, "slope-prefetch-" + THREAD_NUMBER.incrementAndGet());
+        // pending reads must not keep the JVM alive
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    private void readTile(Point tileIndex) {
+        try {
+            image.getTile(tileIndex.x, tileIndex.y);
+        } catch (RuntimeException e) {
+            // the compute thread reads the tile again and reports the error
+            SystemUtils.LOG.fine("Unable to prefetch elevation tile " + tileIndex + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Determines the source tiles covering the padded source rectangles of the target tiles following a target tile,
+     * in row-major order. Source tiles needed by the given target tile itself are excluded, the compute thread reads
+     * them anyway.
+     *
+     * @param targetRectangle - the rectangle of the target tile being computed
+     * @param targetTileSize  - the tile size of the target images
+     * @param halo            - the number of pixels the source rectangles extend beyond the target rectangles
+     * @param depth           - the number of following target tiles
+     * @param imageBounds     - the bounds of source and target images
+     * @param sourceTileSize  - the tile size of the source image
+     * @param maxTileCount    - the maximum number of source tiles returned
+     * @return the indices of the source tiles, each once
+     */
+    /* package local for testing */
+    static List<Point> getSourceTileIndices(Rectangle targetRectangle, Dimension targetTileSize, int halo, int depth,
+                                            Rectangle imageBounds, Dimension sourceTileSize, int maxTileCount) {
+        final int numTargetTilesX = (imageBounds.width + targetTileSize.width - 1) / targetTileSize.width;
+        final int numTargetTilesY = (imageBounds.height + targetTileSize.height - 1) / targetTileSize.height;
+        final int targetTileIndex = (targetRectangle.y / targetTileSize.height) * numTargetTilesX +
+                targetRectangle.x / targetTileSize.width;
+        final Set<Point> currentTiles = new HashSet<>();
+        addSourceTileIndices(targetRectangle, halo, imageBounds, sourceTileSize, currentTiles);
+
+        final Set<Point> tileIndices = new LinkedHashSet<>();
+        final int lastTileIndex = Math.min(targetTileIndex + depth, numTargetTilesX * numTargetTilesY - 1);
+        for (int i = targetTileIndex + 1; i <= lastTileIndex; i++) {
+            final Rectangle nextRectangle = new Rectangle((i % numTargetTilesX) * targetTileSize.width,
+                                                          (i / numTargetTilesX) * targetTileSize.height,
+                                                          targetTileSize.width, targetTileSize.height);
+            addSourceTileIndices(nextRectangle, halo, imageBounds, sourceTileSize, tileIndices);
+        }
+        tileIndices.removeAll(currentTiles);
+        final List<Point> result = new ArrayList<>(tileIndices);
+        return result.size() > maxTileCount ? result.subList(0, maxTileCount) : result;
+    }
+
+    private static void addSourceTileIndices(Rectangle targetRectangle, int halo, Rectangle imageBounds,
+                                             Dimension sourceTileSize, Set<Point> tileIndices) {
+        final Rectangle sourceRectangle = new Rectangle(targetRectangle.x - halo, targetRectangle.y - halo,
+                                                        targetRectangle.width + 2 * halo,
+                                                        targetRectangle.height + 2 * halo)
+                .intersection(imageBounds);
+        if (sourceRectangle.isEmpty()) {
+            return;
+        }
+        final int minTileX = sourceRectangle.x / sourceTileSize.width;
+        final int maxTileX = (sourceRectangle.x + sourceRectangle.width - 1) / sourceTileSize.width;
+        final int minTileY = sourceRectangle.y / sourceTileSize.height;
+        final int maxTileY = (sourceRectangle.y + sourceRectangle.height - 1) / sourceTileSize.height;
+        for (int tileY = minTileY; tileY <= maxTileY; tileY++) {
+            for (int tileX = minTileX; tileX <= maxTileX; tileX++) {
+                tileIndices.add(new Point(tileX, tileY));
+            }
+        }
+    }
+}
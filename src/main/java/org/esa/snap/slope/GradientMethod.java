@@ -0,0 +1,85 @@
+package org.esa.snap.slope;
+
+/**
+ * The methods for estimating the elevation gradient from a 3x3 pixel window. Each method computes the elevation
+ * differences b (towards East) and c (towards North) per pixel for a whole row in a loop of its own, so that the
+ * gradient computation is not dispatched per pixel.
+ * <p>
+ * The window elevations z0..z8 are numbered row by row, starting at the upper left pixel.
+ */
+public enum GradientMethod {
+
+    /**
+     * Horn (1981), third-order finite differences weighting the direct neighbours twice:
+     * b = (z2 + 2 z5 + z8 - z0 - 2 z3 - z6) / 8, c = (z0 + 2 z1 + z2 - z6 - 2 z7 - z8) / 8.
+     */
+    HORN {
+        @Override
+        void computeGradients(float[] elev, int upper, int center, int lower, int width, double[] b, double[] c) {
+            double z0 = elev[upper];
+            double z1 = elev[upper + 1];
+            double z3 = elev[center];
+            double z6 = elev[lower];
+            double z7 = elev[lower + 1];
+            for (int i = 0; i < width; i++) {
+                final double z2 = elev[upper + i + 2];
+                final double z5 = elev[center + i + 2];
+                final double z8 = elev[lower + i + 2];
+                b[i] = (z2 + 2 * z5 + z8 - z0 - 2 * z3 - z6) / 8f;
+                c[i] = (z0 + 2 * z1 + z2 - z6 - 2 * z7 - z8) / 8f;
+                z0 = z1;
+                z1 = z2;
+                z3 = elev[center + i + 1];
+                z6 = z7;
+                z7 = z8;
+            }
+        }
+    },
+
+    /**
+     * Zevenbergen and Thorne (1987), second-order finite differences of the four direct neighbours:
+     * b = (z5 - z3) / 2, c = (z1 - z7) / 2.
+     */
+    ZEVENBERGEN_THORNE {
+        @Override
+        void computeGradients(float[] elev, int upper, int center, int lower, int width, double[] b, double[] c) {
+            for (int i = 0; i < width; i++) {
+                b[i] = ((double) elev[center + i + 2] - elev[center + i]) / 2;
+                c[i] = ((double) elev[upper + i + 1] - elev[lower + i + 1]) / 2;
+            }
+        }
+    },
+
+    /**
+     * Evans (1972) and Young (1978), least-squares fit of a quadratic surface, weighting all neighbours equally:
+     * b = (z2 + z5 + z8 - z0 - z3 - z6) / 6, c = (z0 + z1 + z2 - z6 - z7 - z8) / 6.
+     */
+    EVANS_YOUNG {
+        @Override
+        void computeGradients(float[] elev, int upper, int center, int lower, int width, double[] b, double[] c) {
+            double left = (double) elev[upper] + elev[center] + elev[lower];
+            double middle = (double) elev[upper + 1] + elev[center + 1] + elev[lower + 1];
+            for (int i = 0; i < width; i++) {
+                final double right = (double) elev[upper + i + 2] + elev[center + i + 2] + elev[lower + i + 2];
+                b[i] = (right - left) / 6;
+                c[i] = ((double) elev[upper + i] + elev[upper + i + 1] + elev[upper + i + 2] -
+                        elev[lower + i] - elev[lower + i + 1] - elev[lower + i + 2]) / 6;
+                left = middle;
+                middle = right;
+            }
+        }
+    };
+
+    /**
+     * Computes the elevation differences per pixel in x and y direction for a row of pixels.
+     *
+     * @param elev   - the elevation data
+     * @param upper  - offset of the upper left window pixel of the first pixel
+     * @param center - offset of the center left window pixel of the first pixel
+     * @param lower  - offset of the lower left window pixel of the first pixel
+     * @param width  - the number of pixels
+     * @param b      - the elevation differences towards East
+     * @param c      - the elevation differences towards North
+     */
+    abstract void computeGradients(float[] elev, int upper, int center, int lower, int width, double[] b, double[] c);
+}
@@ -0,0 +1,133 @@
+package org.esa.snap.slope;
+
+import org.esa.snap.core.datamodel.Band;
+import org.esa.snap.core.datamodel.ProductData;
+import org.esa.snap.core.gpf.Tile;
+
+/**
+ * Encodes geophysical values as unsigned integer samples using the scaling factor and offset of a band, optionally
+ * log10-scaled. The highest sample value is reserved as no-data code, for the target no-data value as well as for
+ * NaN. Values outside the encoded range are clipped to its bounds.
+ * <p>
+ * With codes 0..n, the quantization error is at most half the scaling factor, i.e.
+ * <ul>
+ * <li>0.18 degrees for slope as UINT8 (0..90 in 254 steps),</li>
+ * <li>0.0007 degrees for slope as UINT16 (0..90 in 65534 steps),</li>
+ * <li>0.0028 degrees for aspect as UINT16 (0..360 in 65534 steps),</li>
+ * <li>0.021 percent of the value for log10-scaled variance as UINT16 (1e-4..1e8 m^2 in 65534 steps).</li>
+ * </ul>
+ */
+final class IntegerEncoding {
+
+    static final IntegerEncoding SLOPE_UINT8 = linear(ProductData.TYPE_UINT8, 90.0);
+    static final IntegerEncoding SLOPE_UINT16 = linear(ProductData.TYPE_UINT16, 90.0);
+    static final IntegerEncoding ASPECT_UINT16 = linear(ProductData.TYPE_UINT16, 360.0);
+    static final IntegerEncoding VARIANCE_LOG_UINT16 = log10(ProductData.TYPE_UINT16, 1.0e-4, 1.0e8);
+
+    private final int dataType;
+    private final double scalingFactor;
+    private final double scalingOffset;
+    private final boolean log10Scaled;
+    private final int noDataCode;
+
+    private IntegerEncoding(int dataType, double scalingFactor, double scalingOffset, boolean log10Scaled) {
+        this.dataType = dataType;
+        this.scalingFactor = scalingFactor;
+        this.scalingOffset = scalingOffset;
+        this.log10Scaled = log10Scaled;
+        noDataCode = getNoDataCode(dataType);
+    }
+
+    /**
+     * @param dataType - {@link ProductData#TYPE_UINT8} or {@link ProductData#TYPE_UINT16}
+     * @param maxValue - the value of the highest code, the lowest code is zero
+     * @return an encoding linear in the value
+     */
+    static IntegerEncoding linear(int dataType, double maxValue) {
+        return new IntegerEncoding(dataType, maxValue / (getNoDataCode(dataType) - 1), 0.0, false);
+    }
+
+    /**
+     * @param dataType - {@link ProductData#TYPE_UINT8} or {@link ProductData#TYPE_UINT16}
+     * @param minValue - the positive value of the lowest code
+     * @param maxValue - the value of the highest code
+     * @return an encoding linear in the logarithm of the value
+     */
+    static IntegerEncoding log10(int dataType, double minValue, double maxValue) {
+        final double scalingOffset = Math.log10(minValue);
+        final double scalingFactor = (Math.log10(maxValue) - scalingOffset) / (getNoDataCode(dataType) - 1);
+        return new IntegerEncoding(dataType, scalingFactor, scalingOffset, true);
+    }
+
+    private static int getNoDataCode(int dataType) {
+        if (dataType == ProductData.TYPE_UINT8) {
+            return 0xff;
+        } else if (dataType == ProductData.TYPE_UINT16) {
+            return 0xffff;
+        }
+        throw new IllegalArgumentException("Unsupported data type " + ProductData.getTypeString(dataType));
+    }
+
+    int getDataType() {
+        return dataType;
+    }
+
+    /**
+     * Sets scaling and no-data value of a band of the data type of this encoding.
+     */
+    void applyTo(Band band) {
+        band.setScalingFactor(scalingFactor);
+        band.setScalingOffset(scalingOffset);
+        band.setLog10Scaled(log10Scaled);
+        band.setNoDataValue(noDataCode);
+        band.setNoDataValueUsed(true);
+    }
+
+    /**
+     * Encodes a row of values into the samples of an integer tile.
+     *
+     * @param values      - the geophysical values
+     * @param valuesIndex - index of the first value
+     * @param tile        - the target tile of the data type of this encoding
+     * @param tileIndex   - index of the first sample in the data buffer of the tile
+     * @param count       - the number of values
+     */
+    void encode(float[] values, int valuesIndex, Tile tile, int tileIndex, int count) {
+        if (dataType == ProductData.TYPE_UINT8) {
+            final byte[] samples = tile.getDataBufferByte();
+            for (int i = 0; i < count; i++) {
+                samples[tileIndex + i] = (byte) encode(values[valuesIndex + i]);
+            }
+        } else {
+            final short[] samples = tile.getDataBufferShort();
+            for (int i = 0; i < count; i++) {
+                samples[tileIndex + i] = (short) encode(values[valuesIndex + i]);
+            }
+        }
+    }
+
+    /**
+     * @param value - the geophysical value
+     * @return the nearest code, or the no-data code for the target no-data value and NaN
+     */
+    int encode(float value) {
+        if (Float.isNaN(value) || value == SlopeCalculationOp.NO_DATA_VALUE) {
+            return noDataCode;
+        }
+        final double code = ((log10Scaled ? Math.log10(value) : value) - scalingOffset) / scalingFactor + 0.5;
+        // also maps the logarithm of zero, negative infinity, to zero
+        if (!(code > 0.0)) {
+            return 0;
+        }
+        return code < noDataCode - 1 ? (int) code : noDataCode - 1;
+    }
+
+    /**
+     * @param code - a code other than the no-data code
+     * @return the geophysical value of the code
+     */
+    double decode(int code) {
+        final double value = code * scalingFactor + scalingOffset;
+        return log10Scaled ? Math.pow(10.0, value) : value;
+    }
+}
@@ -0,0 +1,546 @@
+package org.esa.snap.slope;
+
+import com.bc.ceres.core.ProgressMonitor;
+import org.esa.snap.core.dataio.ProductIO;
+import org.esa.snap.core.dataio.ProductIOPlugInManager;
+import org.esa.snap.core.dataio.ProductWriterPlugIn;
+import org.esa.snap.core.datamodel.Band;
+import org.esa.snap.core.datamodel.CrsGeoCoding;
+import org.esa.snap.core.datamodel.GeoCoding;
+import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.core.util.SystemUtils;
+import org.esa.snap.core.util.io.FileUtils;
+import org.geotools.referencing.CRS;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+import java.awt.geom.AffineTransform;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+
+/**
+ * Computes slope, aspect and elevation variance for a collection of DEM tiles, e.g. 1x1 degree SRTM or Copernicus
+ * DEM files, writing one target product per source file. The tiles are processed in parallel on a bounded thread
+ * pool with the {@link SlopeStreamingProcessor}. The pixels around each tile are taken from its neighbouring tiles,
+ * so the results are free of seams and equal to those of the operator applied to the mosaic of all tiles. Only the
+ * edges of the mosaic are extended by copying the edge pixels.
+ * <p>
+ * All tiles must have a {@link CrsGeoCoding} with the same map CRS and pixel size, and their pixels must lie on a
+ * common grid. Tiles may overlap, as the SRTM tiles, which share their edge rows and columns with their neighbours.
+ * The rows and columns of a tile needed by the halos of its neighbours are read at once, with a single read of the
+ * tile, and kept in a small cache shared by all threads.
+ */
+public class SlopeBatchProcessor {
+
+    static final int DEFAULT_EDGE_CACHE_SIZE = 64;
+    static final String TARGET_FILE_SUFFIX = "_slope";
+
+    private final String elevationBandName;
+    private final String formatName;
+    private final int parallelism;
+    private final int edgeCacheSize;
+
+    public SlopeBatchProcessor(String elevationBandName, String formatName, int parallelism) {
+        this(elevationBandName, formatName, parallelism, DEFAULT_EDGE_CACHE_SIZE);
+    }
+
+    /**
+     * @param elevationBandName - the name of the elevation band of the source products
+     * @param formatName        - the name of the target product format, e.g. 'BEAM-DIMAP' or 'GeoTIFF'
+     * @param parallelism       - the number of tiles processed at once
+     * @param edgeCacheSize     - the maximum number of tiles whose edge rows and columns are kept in memory
+     */
+    public SlopeBatchProcessor(String elevationBandName, String formatName, int parallelism, int edgeCacheSize) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive");
+        }
+        if (edgeCacheSize < 1) {
+            throw new IllegalArgumentException("Edge cache size must be positive");
+        }
+        this.elevationBandName = elevationBandName;
+        this.formatName = formatName;
+        this.parallelism = parallelism;
+        this.edgeCacheSize = edgeCacheSize;
+    }
+
+    /**
+     * Computes slope, aspect and elevation variance for each of the source files.
+     *
+     * @param sourceFiles     - the DEM tiles
+     * @param targetDirectory - the directory the target products are written to
+     * @param pm              - a progress monitor
+     * @return the target files, in the order of the source files
+     * @throws IOException if a source file cannot be read, the tiles are not on a common grid or a target product
+     *                     cannot be written
+     */
+    public List<File> process(List<File> sourceFiles, File targetDirectory, ProgressMonitor pm) throws IOException {
+        if (!targetDirectory.isDirectory() && !targetDirectory.mkdirs()) {
+            throw new IOException("Unable to create target directory '" + targetDirectory + "'");
+        }
+        final TileGrid grid = new TileGrid(createTiles(sourceFiles));
+        final EdgeCache edgeCache = new EdgeCache(edgeCacheSize);
+        final String extension = getDefaultFileExtension(formatName);
+
+        // neighbouring tiles are processed close in time, so that their edges are still in the cache
+        final List<DemTile> sortedTiles = new ArrayList<>(grid.tiles);
+        Collections.sort(sortedTiles, (t1, t2) -> t1.row0 != t2.row0 ? Long.compare(t1.row0, t2.row0) :
+                Long.compare(t1.col0, t2.col0));
+        final Map<DemTile, File> targetFiles = new HashMap<>();
+        for (DemTile tile : sortedTiles) {
+            final String name = FileUtils.getFilenameWithoutExtension(tile.file) + TARGET_FILE_SUFFIX + extension;
+            targetFiles.put(tile, new File(targetDirectory, name));
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        pm.beginTask("Computing slope, aspect and elevation variance", sortedTiles.size());
+        try {
+            final List<Future<?>> futures = new ArrayList<>(sortedTiles.size());
+            for (DemTile tile : sortedTiles) {
+                futures.add(executor.submit(() -> {
+                    processTile(tile, grid, edgeCache, targetFiles.get(tile));
+                    return null;
+                }));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    futures.get(i).get();
+                } catch (ExecutionException e) {
+                    throw new IOException("Unable to process '" + sortedTiles.get(i).file + "'", e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while processing DEM tiles", e);
+                }
+                pm.worked(1);
+            }
+        } finally {
+            executor.shutdownNow();
+            pm.done();
+        }
+        final List<File> result = new ArrayList<>(sourceFiles.size());
+        for (DemTile tile : grid.tiles) {
+            result.add(targetFiles.get(tile));
+        }
+        return result;
+    }
+
+    /**
+     * @param directory - a directory
+     * @return the files in the directory for which a product reader exists, sorted by name
+     */
+    public static List<File> listSourceFiles(File directory) throws IOException {
+        final File[] files = directory.listFiles();
+        if (files == null) {
+            throw new IOException("Unable to list '" + directory + "'");
+        }
+        Arrays.sort(files);
+        final List<File> sourceFiles = new ArrayList<>();
+        for (File file : files) {
+            if (file.isFile() && ProductIO.getProductReaderForInput(file) != null) {
+                sourceFiles.add(file);
+            }
+        }
+        return sourceFiles;
+    }
+
+    /**
+     * Computes slope, aspect and elevation variance of a collection of DEM tiles.
+     * Usage: {@code SlopeBatchProcessor <target-directory> <source-file-or-directory>...}. The elevation band name,
+     * format name and parallelism are given by the system properties 'slope.elevationBandName' (elevation),
+     * 'slope.formatName' (BEAM-DIMAP) and 'slope.parallelism' (the number of processors).
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: SlopeBatchProcessor <target-directory> <source-file-or-directory>...");
+            System.exit(1);
+        }
+        SystemUtils.init3rdPartyLibs(SlopeBatchProcessor.class.getClassLoader());
+        final String elevationBandName = System.getProperty("slope.elevationBandName", "elevation");
+        final String formatName = System.getProperty("slope.formatName", ProductIO.DEFAULT_FORMAT_NAME);
+        final int parallelism = Integer.getInteger("slope.parallelism", Runtime.getRuntime().availableProcessors());
+
+        final List<File> sourceFiles = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            final File file = new File(args[i]);
+            if (file.isDirectory()) {
+                sourceFiles.addAll(listSourceFiles(file));
+            } else {
+                sourceFiles.add(file);
+            }
+        }
+        new SlopeBatchProcessor(elevationBandName, formatName, parallelism)
+                .process(sourceFiles, new File(args[0]), ProgressMonitor.NULL);
+    }
+
+    private void processTile(DemTile tile, TileGrid grid, EdgeCache edgeCache, File targetFile) throws IOException {
+        final SlopeStreamingProcessor.Halo halo = new SlopeStreamingProcessor.Halo(
+                readHaloRow(tile, tile.row0 - 1, grid, edgeCache),
+                readHaloRow(tile, tile.row0 + tile.height, grid, edgeCache),
+                readHaloColumn(tile, tile.col0 - 1, grid, edgeCache),
+                readHaloColumn(tile, tile.col0 + tile.width, grid, edgeCache));
+        final Product product = readProduct(tile.file);
+        try {
+            new SlopeStreamingProcessor(getElevationBand(product, tile.file))
+                    .process(targetFile, formatName, halo, ProgressMonitor.NULL);
+        } catch (IOException e) {
+            SystemUtils.LOG.log(Level.WARNING, "Unable to process '" + tile.file + "'", e);
+            throw e;
+        } finally {
+            product.dispose();
+        }
+    }
+
+    /**
+     * @param row - the row in the common grid
+     * @return the row including both corners, or {@code null} if not covered by the neighbouring tiles
+     */
+    private float[] readHaloRow(DemTile tile, long row, TileGrid grid, EdgeCache edgeCache) throws IOException {
+        final float[] haloRow = new float[tile.width + 2];
+        // the corners are read last, they fall back to the adjacent pixel of the halo row
+        for (int x = 1; x <= tile.width; x++) {
+            final long col = tile.col0 - 1 + x;
+            final DemTile neighbour = grid.findNeighbour(tile, col, row);
+            if (neighbour == null) {
+                return null;
+            }
+            haloRow[x] = readRowPixel(neighbour, col, row, grid, edgeCache);
+        }
+        for (int x : new int[]{0, tile.width + 1}) {
+            final long col = tile.col0 - 1 + x;
+            final DemTile neighbour = grid.findNeighbour(tile, col, row);
+            if (neighbour != null) {
+                haloRow[x] = readRowPixel(neighbour, col, row, grid, edgeCache);
+            } else {
+                // a corner without diagonal neighbour is a copy of the adjacent pixel of the halo row
+                haloRow[x] = haloRow[x == 0 ? 1 : tile.width];
+            }
+        }
+        return haloRow;
+    }
+
+    private float readRowPixel(DemTile neighbour, long col, long row, TileGrid grid, EdgeCache edgeCache)
+            throws IOException {
+        return edgeCache.get(neighbour, grid, this).getRow((int) (row - neighbour.row0))[(int) (col - neighbour.col0)];
+    }
+
+    /**
+     * @param col - the column in the common grid
+     * @return the column, or {@code null} if not covered by the neighbouring tiles
+     */
+    private float[] readHaloColumn(DemTile tile, long col, TileGrid grid, EdgeCache edgeCache) throws IOException {
+        final float[] haloColumn = new float[tile.height];
+        for (int y = 0; y < tile.height; y++) {
+            final long row = tile.row0 + y;
+            final DemTile neighbour = grid.findNeighbour(tile, col, row);
+            if (neighbour == null) {
+                return null;
+            }
+            final float[] edge = edgeCache.get(neighbour, grid, this).getColumn((int) (col - neighbour.col0));
+            haloColumn[y] = edge[(int) (row - neighbour.row0)];
+        }
+        return haloColumn;
+    }
+
+    /**
+     * Reads the given rows and columns of a tile, opening its product once.
+     */
+    private TileEdges readEdges(DemTile tile, Set<Integer> rows, Set<Integer> columns) throws IOException {
+        final Product product = readProduct(tile.file);
+        try {
+            final Band band = getElevationBand(product, tile.file);
+            final TileEdges edges = new TileEdges();
+            for (int y : rows) {
+                edges.rows.put(y, readElevations(band, 0, y, tile.width, 1));
+            }
+            for (int x : columns) {
+                edges.columns.put(x, readElevations(band, x, 0, 1, tile.height));
+            }
+            return edges;
+        } finally {
+            product.dispose();
+        }
+    }
+
+    /**
+     * Reads a rectangle of elevations of a band, with elevations outside the valid mask replaced by NaN.
+     */
+    private static float[] readElevations(Band band, int x, int y, int width, int height) throws IOException {
+        final float[] elevations = new float[width * height];
+        band.readPixels(x, y, width, height, elevations);
+        if (band.isValidMaskUsed()) {
+            final boolean[] validMask = new boolean[width * height];
+            band.readValidMask(x, y, width, height, validMask);
+            for (int i = 0; i < elevations.length; i++) {
+                if (!validMask[i]) {
+                    elevations[i] = Float.NaN;
+                }
+            }
+        }
+        return elevations;
+    }
+
+    private Band getElevationBand(Product product, File file) throws IOException {
+        final Band band = product.getBand(elevationBandName);
+        if (band == null) {
+            throw new IOException("Source product '" + file + "' has no band '" + elevationBandName + "'");
+        }
+        return band;
+    }
+
+    private static Product readProduct(File file) throws IOException {
+        final Product product = ProductIO.readProduct(file);
+        if (product == null) {
+            throw new IOException("No reader found for '" + file + "'");
+        }
+        return product;
+    }
+
+    private static String getDefaultFileExtension(String formatName) throws IOException {
+        final Iterator<ProductWriterPlugIn> plugIns = ProductIOPlugInManager.getInstance().getWriterPlugIns(formatName);
+        if (!plugIns.hasNext()) {
+            throw new IOException("No product writer found for format '" + formatName + "'");
+        }
+        final String[] extensions = plugIns.next().getDefaultFileExtensions();
+        return extensions != null && extensions.length > 0 ? extensions[0] : "";
+    }
+
+    /**
+     * Locates the tiles in the common pixel grid given by the geocoding of the first tile.
+     */
+    private static List<DemTile> createTiles(List<File> sourceFiles) throws IOException {
+        final List<DemTile> tiles = new ArrayList<>(sourceFiles.size());
+        CoordinateReferenceSystem gridCrs = null;
+        AffineTransform gridTransform = null;
+        for (File file : sourceFiles) {
+            final Product product = readProduct(file);
+            try {
+                final GeoCoding geoCoding = product.getSceneGeoCoding();
+                if (!(geoCoding instanceof CrsGeoCoding) ||
+                        !(geoCoding.getImageToMapTransform() instanceof AffineTransform)) {
+                    throw new IOException("Source product '" + file + "' has no affine map geo-coding");
+                }
+                final AffineTransform i2m = (AffineTransform) geoCoding.getImageToMapTransform();
+                if (i2m.getShearX() != 0.0 || i2m.getShearY() != 0.0) {
+                    throw new IOException("Source product '" + file + "' has a rotated geo-coding");
+                }
+                if (gridTransform == null) {
+                    gridCrs = geoCoding.getMapCRS();
+                    gridTransform = i2m;
+                } else if (!CRS.equalsIgnoreMetadata(gridCrs, geoCoding.getMapCRS()) ||
+                        !isEqual(i2m.getScaleX(), gridTransform.getScaleX()) ||
+                        !isEqual(i2m.getScaleY(), gridTransform.getScaleY())) {
+                    throw new IOException("Source product '" + file + "' differs in map CRS or pixel size");
+                }
+                final double col = (i2m.getTranslateX() - gridTransform.getTranslateX()) / gridTransform.getScaleX();
+                final double row = (i2m.getTranslateY() - gridTransform.getTranslateY()) / gridTransform.getScaleY();
+                if (!isEqual(col, Math.rint(col)) || !isEqual(row, Math.rint(row))) {
+                    throw new IOException("Source product '" + file + "' is not on the pixel grid of the first tile");
+                }
+                tiles.add(new DemTile(file, Math.round(col), Math.round(row),
+                                      product.getSceneRasterWidth(), product.getSceneRasterHeight()));
+            } finally {
+                product.dispose();
+            }
+        }
+        return tiles;
+    }
+
+    private static boolean isEqual(double a, double b) {
+        return Math.abs(a - b) <= 1.0e-6 * Math.max(1.0, Math.abs(b));
+    }
+
+    /**
+     * A source file and its location in the common pixel grid.
+     */
+    private static final class DemTile {
+
+        private final File file;
+        private final long col0;
+        private final long row0;
+        private final int width;
+        private final int height;
+
+        private DemTile(File file, long col0, long row0, int width, int height) {
+            this.file = file;
+            this.col0 = col0;
+            this.row0 = row0;
+            this.width = width;
+            this.height = height;
+        }
+
+        private boolean contains(long col, long row) {
+            return col >= col0 && col < col0 + width && row >= row0 && row < row0 + height;
+        }
+    }
+
+    /**
+     * Finds the tiles containing a pixel of the common grid through a coarse grid of cells of the size of the
+     * largest tile.
+     */
+    private static final class TileGrid {
+
+        private final List<DemTile> tiles;
+        private final Map<Long, List<DemTile>> cells;
+        private final long cellWidth;
+        private final long cellHeight;
+
+        private TileGrid(List<DemTile> tiles) {
+            this.tiles = tiles;
+            long maxWidth = 1;
+            long maxHeight = 1;
+            for (DemTile tile : tiles) {
+                maxWidth = Math.max(maxWidth, tile.width);
+                maxHeight = Math.max(maxHeight, tile.height);
+            }
+            cellWidth = maxWidth;
+            cellHeight = maxHeight;
+            cells = new HashMap<>();
+            for (DemTile tile : tiles) {
+                for (long cy = Math.floorDiv(tile.row0, cellHeight);
+                     cy <= Math.floorDiv(tile.row0 + tile.height - 1, cellHeight); cy++) {
+                    for (long cx = Math.floorDiv(tile.col0, cellWidth);
+                         cx <= Math.floorDiv(tile.col0 + tile.width - 1, cellWidth); cx++) {
+                        cells.computeIfAbsent(getCellKey(cx, cy), k -> new ArrayList<>()).add(tile);
+                    }
+                }
+            }
+        }
+
+        /**
+         * @return a tile other than the given one containing the pixel, or {@code null}
+         */
+        private DemTile findNeighbour(DemTile tile, long col, long row) {
+            final List<DemTile> candidates =
+                    cells.get(getCellKey(Math.floorDiv(col, cellWidth), Math.floorDiv(row, cellHeight)));
+            if (candidates != null) {
+                for (DemTile candidate : candidates) {
+                    if (candidate != tile && candidate.contains(col, row)) {
+                        return candidate;
+                    }
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Determines the rows and columns of a tile which may be part of the halo of another tile: the rows above
+         * and below and the columns left and right of each tile overlapping the tile extended by one pixel.
+         *
+         * @param rows    - receives the row indices within the tile
+         * @param columns - receives the column indices within the tile
+         */
+        private void getHaloLines(DemTile tile, Set<Integer> rows, Set<Integer> columns) {
+            final Set<DemTile> others = new HashSet<>();
+            for (long cy = Math.floorDiv(tile.row0 - 1, cellHeight);
+                 cy <= Math.floorDiv(tile.row0 + tile.height, cellHeight); cy++) {
+                for (long cx = Math.floorDiv(tile.col0 - 1, cellWidth);
+                     cx <= Math.floorDiv(tile.col0 + tile.width, cellWidth); cx++) {
+                    final List<DemTile> candidates = cells.get(getCellKey(cx, cy));
+                    if (candidates != null) {
+                        others.addAll(candidates);
+                    }
+                }
+            }
+            others.remove(tile);
+            for (DemTile other : others) {
+                // halo rows include the corners, halo columns do not
+                if (other.col0 - 1 < tile.col0 + tile.width && other.col0 + other.width + 1 > tile.col0) {
+                    addLine(rows, other.row0 - 1 - tile.row0, tile.height);
+                    addLine(rows, other.row0 + other.height - tile.row0, tile.height);
+                }
+                if (other.row0 < tile.row0 + tile.height && other.row0 + other.height > tile.row0) {
+                    addLine(columns, other.col0 - 1 - tile.col0, tile.width);
+                    addLine(columns, other.col0 + other.width - tile.col0, tile.width);
+                }
+            }
+        }
+
+        private static void addLine(Set<Integer> lines, long line, int size) {
+            if (line >= 0 && line < size) {
+                lines.add((int) line);
+            }
+        }
+
+        private static long getCellKey(long cx, long cy) {
+            return (cy << 32) ^ (cx & 0xffffffffL);
+        }
+    }
+
+    /**
+     * The rows and columns of a tile read for the halos of its neighbours, by index within the tile.
+     */
+    private static final class TileEdges {
+
+        private final Map<Integer, float[]> rows = new HashMap<>();
+        private final Map<Integer, float[]> columns = new HashMap<>();
+
+        private float[] getRow(int y) {
+            return getLine(rows, y);
+        }
+
+        private float[] getColumn(int x) {
+            return getLine(columns, x);
+        }
+
+        private static float[] getLine(Map<Integer, float[]> lines, int index) {
+            final float[] line = lines.get(index);
+            if (line == null) {
+                throw new IllegalStateException("Edge line " + index + " has not been read");
+            }
+            return line;
+        }
+    }
+
+    /**
+     * A bounded cache of the edges of tiles, least recently used tiles are evicted first. All rows and columns of a
+     * tile which its neighbours need are read together, so that each tile is read once as long as it is cached.
+     * Tiles may be read twice by concurrent threads, but never block each other while reading.
+     */
+    private static final class EdgeCache {
+
+        private final Map<DemTile, TileEdges> edges;
+
+        private EdgeCache(int maxSize) {
+            edges = new LinkedHashMap<DemTile, TileEdges>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<DemTile, TileEdges> eldest) {
+                    return size() > maxSize;
+                }
+            };
+        }
+
+        private TileEdges get(DemTile tile, TileGrid grid, SlopeBatchProcessor processor) throws IOException {
+            TileEdges tileEdges = getCached(tile);
+            if (tileEdges == null) {
+                final Set<Integer> rows = new TreeSet<>();
+                final Set<Integer> columns = new TreeSet<>();
+                grid.getHaloLines(tile, rows, columns);
+                tileEdges = processor.readEdges(tile, rows, columns);
+                put(tile, tileEdges);
+            }
+            return tileEdges;
+        }
+
+        private synchronized TileEdges getCached(DemTile tile) {
+            return edges.get(tile);
+        }
+
+        private synchronized void put(DemTile tile, TileEdges tileEdges) {
+            edges.put(tile, tileEdges);
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package org.esa.snap.slope;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts tiles and pixels computed by the {@link SlopeCalculationOp} and the time spent in fetching source tiles,
+ * computing and writing into the target tiles. Tile latencies are kept in a histogram with eight buckets per power
+ * of two, so that percentiles are exact to within 12.5 percent. Recording is thread-safe and does not allocate
+ * memory.
+ */
+public class SlopeCalculationMetrics implements SlopeCalculationMetricsMBean {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    private final LongAdder tileCount = new LongAdder();
+    private final LongAdder pixelCount = new LongAdder();
+    private final LongAdder sourceFetchNanos = new LongAdder();
+    private final LongAdder computeNanos = new LongAdder();
+    private final LongAdder targetWriteNanos = new LongAdder();
+    private final LongAccumulator firstStartNanos = new LongAccumulator(Math::min, Long.MAX_VALUE);
+    private final LongAccumulator lastEndNanos = new LongAccumulator(Math::max, Long.MIN_VALUE);
+    private final AtomicLongArray latencyCounts = new AtomicLongArray(64 * SUB_BUCKET_COUNT);
+
+    /**
+     * Records a computed tile.
+     *
+     * @param pixels           - the number of pixels of the tile
+     * @param startNanos       - the {@link System#nanoTime()} at which the tile computation started
+     * @param endNanos         - the {@link System#nanoTime()} at which the tile computation ended
+     * @param sourceFetchNanos - the time spent in fetching source data
+     * @param targetWriteNanos - the time spent in writing into target tiles
+     */
+    void recordTile(long pixels, long startNanos, long endNanos, long sourceFetchNanos, long targetWriteNanos) {
+        final long latencyNanos = endNanos - startNanos;
+        tileCount.increment();
+        pixelCount.add(pixels);
+        this.sourceFetchNanos.add(sourceFetchNanos);
+        this.targetWriteNanos.add(targetWriteNanos);
+        computeNanos.add(latencyNanos - sourceFetchNanos - targetWriteNanos);
+        firstStartNanos.accumulate(startNanos);
+        lastEndNanos.accumulate(endNanos);
+        latencyCounts.incrementAndGet(getBucket(latencyNanos));
+    }
+
+    /**
+     * @return a consistent copy of the current values
+     */
+    public Snapshot getSnapshot() {
+        final long[] counts = new long[latencyCounts.length()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = latencyCounts.get(i);
+        }
+        final long wallNanos = tileCount.sum() > 0 ? lastEndNanos.get() - firstStartNanos.get() : 0L;
+        return new Snapshot(tileCount.sum(), pixelCount.sum(), sourceFetchNanos.sum(), computeNanos.sum(),
+                            targetWriteNanos.sum(), wallNanos, counts);
+    }
+
+    @Override
+    public long getTileCount() {
+        return tileCount.sum();
+    }
+
+    @Override
+    public long getPixelCount() {
+        return pixelCount.sum();
+    }
+
+    @Override
+    public double getSourceFetchSeconds() {
+        return sourceFetchNanos.sum() * 1.0e-9;
+    }
+
+    @Override
+    public double getComputeSeconds() {
+        return computeNanos.sum() * 1.0e-9;
+    }
+
+    @Override
+    public double getTargetWriteSeconds() {
+        return targetWriteNanos.sum() * 1.0e-9;
+    }
+
+    @Override
+    public double getMegapixelsPerSecond() {
+        return getSnapshot().getMegapixelsPerSecond();
+    }
+
+    @Override
+    public double getMedianTileMillis() {
+        return getSnapshot().getTileMillis(0.5);
+    }
+
+    @Override
+    public double get90thPercentileTileMillis() {
+        return getSnapshot().getTileMillis(0.9);
+    }
+
+    @Override
+    public double get99thPercentileTileMillis() {
+        return getSnapshot().getTileMillis(0.99);
+    }
+
+    @Override
+    public void reset() {
+        tileCount.reset();
+        pixelCount.reset();
+        sourceFetchNanos.reset();
+        computeNanos.reset();
+        targetWriteNanos.reset();
+        firstStartNanos.reset();
+        lastEndNanos.reset();
+        for (int i = 0; i < latencyCounts.length(); i++) {
+            latencyCounts.set(i, 0L);
+        }
+    }
+
+    /* package local for testing */
+    static int getBucket(long nanos) {
+        if (nanos < SUB_BUCKET_COUNT) {
+            return (int) Math.max(nanos, 0L);
+        }
+        final int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        final int subBucket = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+        return exponent * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    /* package local for testing */
+    static long getBucketUpperBound(int bucket) {
+        if (bucket < SUB_BUCKET_COUNT) {
+            return bucket + 1;
+        }
+        final int exponent = bucket / SUB_BUCKET_COUNT;
+        final long subBucket = bucket % SUB_BUCKET_COUNT;
+        return (SUB_BUCKET_COUNT + subBucket + 1) << (exponent - SUB_BUCKET_BITS);
+    }
+
+    /**
+     * An immutable copy of the metrics at some point in time.
+     */
+    public static class Snapshot {
+
+        private final long tileCount;
+        private final long pixelCount;
+        private final long sourceFetchNanos;
+        private final long computeNanos;
+        private final long targetWriteNanos;
+        private final long wallNanos;
+        private final long[] latencyCounts;
+
+        private Snapshot(long tileCount, long pixelCount, long sourceFetchNanos, long computeNanos,
+                         long targetWriteNanos, long wallNanos, long[] latencyCounts) {
+            this.tileCount = tileCount;
+            this.pixelCount = pixelCount;
+            this.sourceFetchNanos = sourceFetchNanos;
+            this.computeNanos = computeNanos;
+            this.targetWriteNanos = targetWriteNanos;
+            this.wallNanos = wallNanos;
+            this.latencyCounts = latencyCounts;
+        }
+
+        public long getTileCount() {
+            return tileCount;
+        }
+
+        public long getPixelCount() {
+            return pixelCount;
+        }
+
+        public long getSourceFetchNanos() {
+            return sourceFetchNanos;
+        }
+
+        public long getComputeNanos() {
+            return computeNanos;
+        }
+
+        public long getTargetWriteNanos() {
+            return targetWriteNanos;
+        }
+
+        /**
+         * @return the time from the start of the first to the end of the last tile, in which tiles may have been
+         * computed in parallel
+         */
+        public long getWallNanos() {
+            return wallNanos;
+        }
+
+        /**
+         * @return the number of pixels per wall-clock microsecond, zero if no tile has been computed
+         */
+        public double getMegapixelsPerSecond() {
+            return wallNanos > 0 ? pixelCount * 1.0e3 / wallNanos : 0.0;
+        }
+
+        /**
+         * @param quantile - the quantile, from zero to one
+         * @return the upper bound of the latency histogram bucket containing the quantile in milliseconds, zero if
+         * no tile has been computed
+         */
+        public double getTileMillis(double quantile) {
+            final long rank = (long) Math.ceil(quantile * tileCount);
+            long count = 0;
+            for (int i = 0; i < latencyCounts.length; i++) {
+                count += latencyCounts[i];
+                if (count > 0 && count >= rank) {
+                    return getBucketUpperBound(i) * 1.0e-6;
+                }
+            }
+            return 0.0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ENGLISH,
+                                 "%d tiles, %.2f Mpx in %.3f s (%.2f Mpx/s); source fetch %.3f s, compute %.3f s, " +
+                                         "target write %.3f s; tile latency p50 %.2f ms, p90 %.2f ms, p99 %.2f ms",
+                                 tileCount, pixelCount * 1.0e-6, wallNanos * 1.0e-9, getMegapixelsPerSecond(),
+                                 sourceFetchNanos * 1.0e-9, computeNanos * 1.0e-9, targetWriteNanos * 1.0e-9,
+                                 getTileMillis(0.5), getTileMillis(0.9), getTileMillis(0.99));
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package org.esa.snap.slope;
+
+/**
+ * The JMX management interface of {@link SlopeCalculationMetrics}. All values are totals since the operator was
+ * initialized.
+ */
+public interface SlopeCalculationMetricsMBean {
+
+    long getTileCount();
+
+    long getPixelCount();
+
+    double getSourceFetchSeconds();
+
+    double getComputeSeconds();
+
+    double getTargetWriteSeconds();
+
+    double getMegapixelsPerSecond();
+
+    double getMedianTileMillis();
+
+    double get90thPercentileTileMillis();
+
+    double get99thPercentileTileMillis();
+
+    void reset();
+}
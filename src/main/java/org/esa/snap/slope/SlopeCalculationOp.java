@@ -1,7 +1,6 @@
 package org.esa.snap.slope;
 
 import com.bc.ceres.core.ProgressMonitor;
-import org.apache.commons.math3.stat.StatUtils;
 import org.esa.snap.core.datamodel.*;
 import org.esa.snap.core.gpf.Operator;
 import org.esa.snap.core.gpf.OperatorException;
@@ -12,12 +11,33 @@ import org.esa.snap.core.gpf.annotations.Parameter;
 import org.esa.snap.core.gpf.annotations.SourceProduct;
 import org.esa.snap.core.gpf.annotations.TargetProduct;
 import org.esa.snap.core.util.ProductUtils;
+import org.esa.snap.core.util.SystemUtils;
 import org.esa.snap.core.util.math.MathUtils;
+import org.geotools.referencing.CRS;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.geotools.referencing.operation.transform.ConcatenatedTransform;
+import org.opengis.referencing.FactoryException;
+import org.opengis.referencing.crs.GeographicCRS;
 import org.opengis.referencing.operation.MathTransform;
+import org.opengis.referencing.operation.TransformException;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
 import javax.media.jai.BorderExtender;
+import javax.media.jai.JAI;
 import java.awt.*;
 import java.awt.geom.AffineTransform;
+import java.awt.image.RenderedImage;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -42,6 +62,60 @@ public class SlopeCalculationOp extends Operator {
             description = "If selected, elevation source band will be written to target product.")
     private boolean copyElevationBand;
 
+    @Parameter(valueSet = {SLOPE_BAND_NAME, ASPECT_BAND_NAME, VARIANCE_BAND_NAME, ORIENTATION_BAND_NAME,
+            HILLSHADE_BAND_NAME, PROFILE_CURVATURE_BAND_NAME, PLAN_CURVATURE_BAND_NAME, RUGGEDNESS_BAND_NAME,
+            TOPOGRAPHIC_POSITION_BAND_NAME},
+            defaultValue = SLOPE_BAND_NAME + "," + ASPECT_BAND_NAME + "," + VARIANCE_BAND_NAME,
+            description = "The bands to be computed. Bands which are not selected are neither created nor computed.")
+    private String[] outputBands;
+
+    @Parameter(defaultValue = "3", interval = "[3,255]",
+            description = "Size of the square pixel window over which the elevation variance is computed. " +
+                    "Must be odd. Slope and aspect are always computed over a 3x3 pixel window.")
+    private int windowSize;
+
+    @Parameter(defaultValue = "HORN",
+            description = "The method for estimating the elevation gradient from a 3x3 pixel window: " +
+                    "HORN weights the direct neighbours twice, ZEVENBERGEN_THORNE uses the four direct neighbours " +
+                    "only, EVANS_YOUNG weights all neighbours equally.")
+    private GradientMethod gradientMethod;
+
+    @Parameter(defaultValue = "315.0", interval = "[0,360]",
+            description = "The sun azimuth for the hillshade in degrees, clockwise from North.")
+    private double sunAzimuth;
+
+    @Parameter(defaultValue = "45.0", interval = "[0,90]",
+            description = "The sun elevation above the horizon for the hillshade in degrees.")
+    private double sunElevation;
+
+    @Parameter(valueSet = {ENCODING_FLOAT32, ENCODING_UINT16, ENCODING_UINT8}, defaultValue = ENCODING_FLOAT32,
+            description = "The data type of the slope band. Integer types store scaled values with a reserved " +
+                    "no-data code. The aspect band is stored as UINT16 for both integer types.")
+    private String outputEncoding;
+
+    @Parameter(defaultValue = "false",
+            description = "If selected, the elevation variance is stored as log10-scaled UINT16 values.")
+    private boolean logScaledVariance;
+
+    @Parameter(defaultValue = "false",
+            description = "If selected, tiles, pixels and the time spent in fetching source data, computing and " +
+                    "writing target data are recorded, published as JMX MBean and logged on disposal.")
+    private boolean collectMetrics;
+
+    @Parameter(description = "Directory of a persistent cache of computed tiles, shared by subsequent runs over " +
+            "the same elevation data. No cache is used if not given.")
+    private File tileCacheDirectory;
+
+    @Parameter(defaultValue = "1024", interval = "[1,1048576]", unit = "MB",
+            description = "The maximum size of the tile cache. The least recently used tiles are removed first.")
+    private int tileCacheSize;
+
+    @Parameter(defaultValue = "0", interval = "[0,64]",
+            description = "Number of target tiles ahead of the one being computed whose elevation tiles are read " +
+                    "asynchronously, to overlap reading and decoding of the DEM with the computation. " +
+                    "The read-ahead is limited to a quarter of the JAI tile cache. 0 disables it.")
+    private int prefetchDepth;
+
     @SourceProduct(description = "Source product containing elevation band.",
             label = "Elevation product")
     private Product sourceProduct;
@@ -49,108 +123,635 @@ public class SlopeCalculationOp extends Operator {
     @TargetProduct
     private Product targetProduct;
 
-    private double spatialResolution;
+    private double[] pixelSizesX;
+    private double[] pixelSizesY;
+
+    private GeoCoding sourceGeoCoding;
+    private RasterDataNode latitudeRaster;
+    private RasterDataNode longitudeRaster;
+    private MathTransform imageToGeoTransform;
 
     private Band elevationBand;
     private Band slopeBand;
     private Band aspectBand;
     private Band varianceBand;
+    private Band orientationBand;
+    private Band hillshadeBand;
+    private Band profileCurvatureBand;
+    private Band planCurvatureBand;
+    private Band ruggednessBand;
+    private Band topographicPositionBand;
+
+    private IntegerEncoding slopeEncoding;
+    private IntegerEncoding aspectEncoding;
+    private IntegerEncoding varianceEncoding;
+
+    private SlopeCalculationMetrics metrics;
+    private ObjectName metricsName;
+    private SlopeTileCache tileCache;
+    private String tileCacheParameters;
+    private int halo;
+    private ElevationPrefetcher prefetcher;
+    final static float NO_DATA_VALUE = SlopeEngine.NO_DATA_VALUE;
+    final static String ENCODING_FLOAT32 = "FLOAT32";
+    final static String ENCODING_UINT16 = "UINT16";
+    final static String ENCODING_UINT8 = "UINT8";
     private final static String TARGET_PRODUCT_NAME = "Slope-Calculation";
     private final static String TARGET_PRODUCT_TYPE = "slope-calculation";
     final static String SLOPE_BAND_NAME = "slope";
     final static String ASPECT_BAND_NAME = "aspect";
     final static String VARIANCE_BAND_NAME = "elevation_variance";
-    private final static String SLOPE_BAND_DESCRIPTION = "Slope of each pixel as angle";
-    private final static String ASPECT_BAND_DESCRIPTION =
+    final static String ORIENTATION_BAND_NAME = "orientation";
+    final static String HILLSHADE_BAND_NAME = "hillshade";
+    final static String PROFILE_CURVATURE_BAND_NAME = "profile_curvature";
+    final static String PLAN_CURVATURE_BAND_NAME = "plan_curvature";
+    final static String RUGGEDNESS_BAND_NAME = "terrain_ruggedness_index";
+    final static String TOPOGRAPHIC_POSITION_BAND_NAME = "topographic_position_index";
+    final static String SLOPE_BAND_DESCRIPTION = "Slope of each pixel as angle";
+    final static String ASPECT_BAND_DESCRIPTION =
             "Aspect of each pixel as angle between North direction and steepest slope, clockwise";
-    private final static String VARIANCE_BAND_DESCRIPTION = "Variance of elevation over a 3x3 pixel window";
-    private final static String SLOPE_BAND_UNIT = "deg [0..90]";
-    private final static String ASPECT_BAND_UNIT = "deg [0..360]";
-    private final static String VARIANCE_BAND_UNIT = "m^2";
+    final static String VARIANCE_BAND_DESCRIPTION = "Variance of elevation over a 3x3 pixel window";
+    private final static String ORIENTATION_BAND_DESCRIPTION =
+            "Orientation of the image grid as angle between East direction and the image x axis";
+    final static String SLOPE_BAND_UNIT = "deg [0..90]";
+    final static String ASPECT_BAND_UNIT = "deg [0..360]";
+    final static String VARIANCE_BAND_UNIT = "m^2";
+    private final static String ORIENTATION_BAND_UNIT = "deg [-180..180]";
+    private final static String HILLSHADE_BAND_DESCRIPTION =
+            "Illumination of each pixel as cosine of the angle between surface normal and sun direction";
+    private final static String PROFILE_CURVATURE_BAND_DESCRIPTION =
+            "Curvature in the direction of the steepest slope, positive for convex surfaces";
+    private final static String PLAN_CURVATURE_BAND_DESCRIPTION =
+            "Curvature of the contour line, positive for convex surfaces";
+    private final static String RUGGEDNESS_BAND_DESCRIPTION =
+            "Terrain ruggedness index as root of the summed squared elevation differences to the eight neighbours";
+    private final static String TOPOGRAPHIC_POSITION_BAND_DESCRIPTION =
+            "Topographic position index as elevation difference to the mean of the eight neighbours";
+    private final static String HILLSHADE_BAND_UNIT = "[0..1]";
+    private final static String CURVATURE_BAND_UNIT = "1/m";
+    private final static String RUGGEDNESS_BAND_UNIT = "m";
 
     @Override
     public void initialize() throws OperatorException {
         sourceProduct = getSourceProduct();
 
         // validation
-        ensureSingleRasterSize(sourceProduct);
+        // multi-size products are accepted, the computation is done at the native size of the elevation band
         elevationBand = sourceProduct.getBand(elevationBandName);
         if (elevationBand == null) {
             throw new OperatorException("Elevation band required to compute slope or aspect");
         }
 
-        GeoCoding sourceGeoCoding = sourceProduct.getSceneGeoCoding();
+        sourceGeoCoding = elevationBand.getGeoCoding();
         if (sourceGeoCoding == null) {
             throw new OperatorException("Source product has no geo-coding");
         }
 
-        // get spatial resolution
-        if (sourceGeoCoding instanceof CrsGeoCoding) {
-            final MathTransform i2m = sourceGeoCoding.getImageToMapTransform();
-            if (i2m instanceof AffineTransform) {
-                spatialResolution = ((AffineTransform) i2m).getScaleX();
-            } else {
-                spatialResolution = computeSpatialResolution(sourceProduct, sourceGeoCoding);
-            }
-        } else {
-            spatialResolution = computeSpatialResolution(sourceProduct, sourceGeoCoding);
+        // get metric pixel sizes per image row
+        pixelSizesX = new double[elevationBand.getRasterHeight()];
+        pixelSizesY = new double[elevationBand.getRasterHeight()];
+        computePixelSizes(elevationBand, pixelSizesX, pixelSizesY);
+
+        if (windowSize % 2 == 0) {
+            throw new OperatorException("Window size must be odd");
+        }
+        if (outputBands == null || outputBands.length == 0) {
+            throw new OperatorException("At least one output band must be selected");
+        }
+        final List<String> outputBandList = Arrays.asList(outputBands);
+        if (ENCODING_UINT16.equals(outputEncoding)) {
+            slopeEncoding = IntegerEncoding.SLOPE_UINT16;
+            aspectEncoding = IntegerEncoding.ASPECT_UINT16;
+        } else if (ENCODING_UINT8.equals(outputEncoding)) {
+            slopeEncoding = IntegerEncoding.SLOPE_UINT8;
+            aspectEncoding = IntegerEncoding.ASPECT_UINT16;
+        }
+        if (logScaledVariance) {
+            varianceEncoding = IntegerEncoding.VARIANCE_LOG_UINT16;
         }
 
         // set up target product
-        targetProduct = createTargetProduct();
+        targetProduct = createTargetProduct(elevationBand);
         if (copyElevationBand) {
             ProductUtils.copyBand(elevationBandName, sourceProduct, targetProduct, true);
         }
-        slopeBand = createBand(SLOPE_BAND_NAME, SLOPE_BAND_DESCRIPTION, SLOPE_BAND_UNIT);
-        aspectBand = createBand(ASPECT_BAND_NAME, ASPECT_BAND_DESCRIPTION, ASPECT_BAND_UNIT);
-        varianceBand = createBand(VARIANCE_BAND_NAME, VARIANCE_BAND_DESCRIPTION, VARIANCE_BAND_UNIT);
+        if (outputBandList.contains(SLOPE_BAND_NAME)) {
+            slopeBand = createBand(targetProduct, SLOPE_BAND_NAME, SLOPE_BAND_DESCRIPTION, SLOPE_BAND_UNIT,
+                                   slopeEncoding);
+        }
+        if (outputBandList.contains(ASPECT_BAND_NAME)) {
+            aspectBand = createBand(targetProduct, ASPECT_BAND_NAME, ASPECT_BAND_DESCRIPTION, ASPECT_BAND_UNIT,
+                                    aspectEncoding);
+        }
+        if (outputBandList.contains(VARIANCE_BAND_NAME)) {
+            varianceBand = createBand(targetProduct, VARIANCE_BAND_NAME, VARIANCE_BAND_DESCRIPTION, VARIANCE_BAND_UNIT,
+                                      varianceEncoding);
+            varianceBand.setDescription(
+                    String.format("Variance of elevation over a %dx%d pixel window", windowSize, windowSize));
+        }
+        if (outputBandList.contains(ORIENTATION_BAND_NAME)) {
+            orientationBand = createBand(targetProduct, ORIENTATION_BAND_NAME, ORIENTATION_BAND_DESCRIPTION,
+                                         ORIENTATION_BAND_UNIT);
+            initGeoLocations();
+        }
+        if (outputBandList.contains(HILLSHADE_BAND_NAME)) {
+            hillshadeBand = createBand(targetProduct, HILLSHADE_BAND_NAME, HILLSHADE_BAND_DESCRIPTION,
+                                       HILLSHADE_BAND_UNIT);
+        }
+        if (outputBandList.contains(PROFILE_CURVATURE_BAND_NAME)) {
+            profileCurvatureBand = createBand(targetProduct, PROFILE_CURVATURE_BAND_NAME,
+                                              PROFILE_CURVATURE_BAND_DESCRIPTION, CURVATURE_BAND_UNIT);
+        }
+        if (outputBandList.contains(PLAN_CURVATURE_BAND_NAME)) {
+            planCurvatureBand = createBand(targetProduct, PLAN_CURVATURE_BAND_NAME,
+                                           PLAN_CURVATURE_BAND_DESCRIPTION, CURVATURE_BAND_UNIT);
+        }
+        if (outputBandList.contains(RUGGEDNESS_BAND_NAME)) {
+            ruggednessBand = createBand(targetProduct, RUGGEDNESS_BAND_NAME, RUGGEDNESS_BAND_DESCRIPTION,
+                                        RUGGEDNESS_BAND_UNIT);
+        }
+        if (outputBandList.contains(TOPOGRAPHIC_POSITION_BAND_NAME)) {
+            topographicPositionBand = createBand(targetProduct, TOPOGRAPHIC_POSITION_BAND_NAME,
+                                                 TOPOGRAPHIC_POSITION_BAND_DESCRIPTION, RUGGEDNESS_BAND_UNIT);
+        }
+        // all outputs but the variance over larger windows need the direct neighbours only
+        halo = varianceBand != null && windowSize > 3 ? windowSize / 2 : 1;
+        // a single computed band is served by computeTile, several ones share the source tile in computeTileStack
+        setRequiresAllBands(new HashSet<>(outputBandList).size() > 1);
         setTargetProduct(targetProduct);
+
+        if (collectMetrics) {
+            metrics = new SlopeCalculationMetrics();
+            registerMetrics();
+        }
+        if (tileCacheDirectory != null) {
+            try {
+                tileCache = SlopeTileCache.getInstance(tileCacheDirectory, tileCacheSize * 1024L * 1024L);
+            } catch (IOException e) {
+                throw new OperatorException("Unable to open tile cache", e);
+            }
+            // everything but the elevations and pixel sizes the cached values depend on, the window size only
+            // matters for the variance
+            tileCacheParameters = "gradientMethod=" + gradientMethod +
+                    (varianceBand != null ? ";windowSize=" + windowSize : "") +
+                    ";sunAzimuth=" + sunAzimuth + ";sunElevation=" + sunElevation +
+                    ";outputEncoding=" + outputEncoding + ";logScaledVariance=" + logScaledVariance +
+                    ";noDataValue=" + NO_DATA_VALUE + ";vectorKernel=" + VectorKernel.isEnabled() + ";bands=";
+        }
+    }
+
+    /**
+     * @return the metrics of this operator, or {@code null} if they are not collected
+     */
+    public SlopeCalculationMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public void dispose() {
+        if (metrics != null) {
+            SystemUtils.LOG.info("SlopeCalculation: " + metrics.getSnapshot());
+            unregisterMetrics();
+        }
+        synchronized (this) {
+            if (prefetcher != null) {
+                prefetcher.dispose();
+                prefetcher = null;
+            }
+        }
+        super.dispose();
+    }
+
+    private synchronized ElevationPrefetcher getPrefetcher() {
+        if (prefetcher == null) {
+            // the preferred tile size is set by GPF after initialisation
+            final RenderedImage elevationImage = elevationBand.getSourceImage();
+            Dimension tileSize = targetProduct.getPreferredTileSize();
+            if (tileSize == null) {
+                tileSize = new Dimension(elevationImage.getTileWidth(), elevationImage.getTileHeight());
+            }
+            final long maxBytes = JAI.getDefaultInstance().getTileCache().getMemoryCapacity() / 4;
+            prefetcher = new ElevationPrefetcher(elevationImage, tileSize, halo, prefetchDepth, maxBytes);
+        }
+        return prefetcher;
+    }
+
+    private void registerMetrics() {
+        try {
+            metricsName = new ObjectName("org.esa.snap.slope:type=SlopeCalculationMetrics,id=" +
+                                                 Integer.toHexString(System.identityHashCode(this)));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, metricsName);
+        } catch (JMException e) {
+            // the metrics are still collected and logged
+            SystemUtils.LOG.warning("Unable to register slope calculation metrics: " + e.getMessage());
+            metricsName = null;
+        }
+    }
+
+    private void unregisterMetrics() {
+        if (metricsName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(metricsName);
+            } catch (JMException e) {
+                SystemUtils.LOG.warning("Unable to unregister slope calculation metrics: " + e.getMessage());
+            }
+            metricsName = null;
+        }
+    }
+
+    @Override
+    public void computeTile(Band targetBand, Tile targetTile, ProgressMonitor pm) throws OperatorException {
+        computeTiles(Collections.singletonMap(targetBand, targetTile), targetTile.getRectangle());
     }
 
     @Override
     public void computeTileStack(Map<Band, Tile> targetTiles, Rectangle targetRectangle, ProgressMonitor pm)
             throws OperatorException {
-        final Rectangle sourceRectangle = getSourceRectangle(targetRectangle);
+        computeTiles(targetTiles, targetRectangle);
+    }
+
+    private void computeTiles(Map<Band, Tile> targetTiles, Rectangle targetRectangle) {
+        // times are only taken if metrics are collected, which costs one check per tile and row otherwise
+        final TileTimes times = metrics != null ? new TileTimes() : null;
+        final Tile orientationTile = targetTiles.get(orientationBand);
         final BorderExtender borderExtender = BorderExtender.createInstance(BorderExtender.BORDER_COPY);
-        final Tile elevationTile = getSourceTile(elevationBand, sourceRectangle, borderExtender);
-        double[] elevationData = new double[9];
+        // all terrain outputs are derived from the same elevation tile
+        for (Band terrainBand : getTerrainBands()) {
+            if (targetTiles.get(terrainBand) != null) {
+                computeTerrainTiles(targetTiles, targetRectangle, borderExtender, times);
+                break;
+            }
+        }
+        if (orientationTile != null) {
+            computeOrientationTile(targetRectangle, borderExtender, orientationTile, times);
+        }
+        if (times != null) {
+            metrics.recordTile((long) targetRectangle.width * targetRectangle.height, times.startNanos,
+                               System.nanoTime(), times.sourceFetchNanos, times.targetWriteNanos);
+        }
+    }
+
+    private Band[] getTerrainBands() {
+        return new Band[]{slopeBand, aspectBand, varianceBand, hillshadeBand, profileCurvatureBand,
+                planCurvatureBand, ruggednessBand, topographicPositionBand};
+    }
 
+    private void computeTerrainTiles(Map<Band, Tile> targetTiles, Rectangle targetRectangle,
+                                     BorderExtender borderExtender, TileTimes times) {
+        final Rectangle sourceRectangle = getSourceRectangle(targetRectangle, halo);
+        if (prefetchDepth > 0) {
+            // the elevations of the next tiles are read while this one is computed
+            getPrefetcher().prefetch(targetRectangle);
+        }
+
+        // the kernel writes rows in place into float tiles, unless one of its bands is encoded as integers
         final Tile slopeTile = targetTiles.get(slopeBand);
         final Tile aspectTile = targetTiles.get(aspectBand);
         final Tile varianceTile = targetTiles.get(varianceBand);
-        for (int y = targetRectangle.y; y < targetRectangle.y + targetRectangle.height; y++) {
-            for (int x = targetRectangle.x; x < targetRectangle.x + targetRectangle.width; x++) {
-                elevationData[0] = elevationTile.getSampleFloat(x-1, y-1);
-                elevationData[1] = elevationTile.getSampleFloat(x, y-1);
-                elevationData[2] = elevationTile.getSampleFloat(x+1, y-1);
-                elevationData[3] = elevationTile.getSampleFloat(x-1, y);
-                elevationData[4] = elevationTile.getSampleFloat(x, y);
-                elevationData[5] = elevationTile.getSampleFloat(x+1, y);
-                elevationData[6] = elevationTile.getSampleFloat(x-1, y+1);
-                elevationData[7] = elevationTile.getSampleFloat(x, y+1);
-                elevationData[8] = elevationTile.getSampleFloat(x+1, y+1);
-
-                final float[] slopeAspectVariance = computeSlopeAspectVariance(elevationData, spatialResolution);
-                slopeTile.setSample(x, y, slopeAspectVariance[0] * MathUtils.RTOD);
-                aspectTile.setSample(x, y, slopeAspectVariance[1] * MathUtils.RTOD);
-                varianceTile.setSample(x, y, slopeAspectVariance[2]);
+        final boolean rowVariance = windowSize == 3;
+        final boolean buffered = slopeTile != null && slopeEncoding != null ||
+                aspectTile != null && aspectEncoding != null ||
+                varianceTile != null && varianceEncoding != null && rowVariance;
+        final TargetRaster slope = TargetRaster.create(slopeTile, slopeEncoding, buffered, 1);
+        final TargetRaster aspect = TargetRaster.create(aspectTile, aspectEncoding, buffered, 1);
+        final TargetRaster variance = rowVariance ? TargetRaster.create(varianceTile, varianceEncoding, buffered, 1) :
+                TargetRaster.create(varianceTile, varianceEncoding, varianceEncoding != null, targetRectangle.height);
+        final TargetRaster hillshade = TargetRaster.create(targetTiles.get(hillshadeBand), null, buffered, 1);
+        final TargetRaster profileCurvature =
+                TargetRaster.create(targetTiles.get(profileCurvatureBand), null, buffered, 1);
+        final TargetRaster planCurvature = TargetRaster.create(targetTiles.get(planCurvatureBand), null, buffered, 1);
+        final TargetRaster ruggedness = TargetRaster.create(targetTiles.get(ruggednessBand), null, buffered, 1);
+        final TargetRaster topographicPosition =
+                TargetRaster.create(targetTiles.get(topographicPositionBand), null, buffered, 1);
+        // the rasters written by the kernel, they are all of the same layout
+        final List<TargetRaster> kernelRasters = new ArrayList<>();
+        for (TargetRaster raster : new TargetRaster[]{slope, aspect, rowVariance ? variance : null, hillshade,
+                profileCurvature, planCurvature, ruggedness, topographicPosition}) {
+            if (raster != null) {
+                kernelRasters.add(raster);
+            }
+        }
+
+        // flags of the source rows containing invalid elevations, null if all elevations are valid
+        boolean[] invalidRows = null;
+        int[] validMask = null;
+        if (elevationBand.isValidMaskUsed()) {
+            final long fetchStartNanos = times != null ? System.nanoTime() : 0L;
+            validMask = elevationBand.getValidMaskImage()
+                    .getExtendedData(sourceRectangle, borderExtender)
+                    .getSamples(sourceRectangle.x, sourceRectangle.y, sourceRectangle.width, sourceRectangle.height,
+                                0, (int[]) null);
+            if (times != null) {
+                times.sourceFetchNanos += System.nanoTime() - fetchStartNanos;
+            }
+            if (!containsValidPixel(validMask, sourceRectangle.width, halo, targetRectangle)) {
+                // no target pixel has a valid window, the per-pixel math is skipped altogether
+                for (TargetRaster raster : kernelRasters) {
+                    raster.fill(NO_DATA_VALUE);
+                }
+                if (variance != null && !rowVariance) {
+                    variance.fill(NO_DATA_VALUE);
+                }
+                return;
+            }
+            invalidRows = getInvalidRows(validMask, sourceRectangle.width, sourceRectangle.height);
+        }
+
+        final long fetchStartNanos = times != null ? System.nanoTime() : 0L;
+        final Tile elevationTile = getSourceTile(elevationBand, sourceRectangle, borderExtender);
+        float[] elevationData;
+        int elevationOffset;
+        int elevationStride;
+        if (elevationBand.getDataType() == ProductData.TYPE_FLOAT32 && !elevationBand.isScalingApplied()) {
+            // raw float samples are geophysical already, read them in place
+            elevationData = elevationTile.getDataBufferFloat();
+            elevationOffset = elevationTile.getScanlineOffset();
+            elevationStride = elevationTile.getScanlineStride();
+        } else {
+            // any other type is converted to geophysical floats once per tile
+            elevationData = elevationTile.getSamplesFloat();
+            elevationOffset = 0;
+            elevationStride = sourceRectangle.width;
+        }
+
+        if (invalidRows != null) {
+            // invalid elevations are set to NaN in a copy, the kernel sets pixels with NaN in their window to no-data
+            elevationData = applyValidMask(elevationData, elevationOffset, elevationStride, validMask,
+                                           sourceRectangle.width, sourceRectangle.height);
+            elevationOffset = 0;
+            elevationStride = sourceRectangle.width;
+        }
+        if (times != null) {
+            times.sourceFetchNanos += System.nanoTime() - fetchStartNanos;
+        }
+
+        // tiles computed before from the same elevations, pixel sizes and parameters are read from the cache
+        String cacheKey = null;
+        if (tileCache != null) {
+            final StringBuilder parameters = new StringBuilder(tileCacheParameters);
+            long cachedSize = 0;
+            for (Band band : getTerrainBands()) {
+                final Tile tile = targetTiles.get(band);
+                if (tile != null) {
+                    parameters.append(band.getName()).append(',');
+                    cachedSize += SlopeTileCache.getSize(tile, band.getDataType());
+                }
+            }
+            cacheKey = SlopeTileCache.computeKey(parameters.toString(), elevationData, elevationOffset,
+                                                 elevationStride, sourceRectangle.width, sourceRectangle.height,
+                                                 pixelSizesX, pixelSizesY, targetRectangle.y, targetRectangle.height);
+            final ByteBuffer entry = tileCache.get(cacheKey, cachedSize);
+            if (entry != null) {
+                final long writeStartNanos = times != null ? System.nanoTime() : 0L;
+                for (Band band : getTerrainBands()) {
+                    final Tile tile = targetTiles.get(band);
+                    if (tile != null) {
+                        SlopeTileCache.read(entry, tile, band.getDataType());
+                    }
+                }
+                if (times != null) {
+                    times.targetWriteNanos += System.nanoTime() - writeStartNanos;
+                }
+                return;
+            }
+        }
+
+        // the 3x3 window variance is computed along with the other outputs, larger windows use summed-area tables
+        if (!kernelRasters.isEmpty()) {
+            final TerrainKernel kernel = new TerrainKernel(gradientMethod, targetRectangle.width, getData(slope),
+                                                           getData(aspect), rowVariance ? getData(variance) : null);
+            kernel.setHillshade(getData(hillshade), sunAzimuth, sunElevation);
+            kernel.setCurvatures(getData(profileCurvature), getData(planCurvature));
+            kernel.setRuggedness(getData(ruggedness), getData(topographicPosition));
+            final TargetRaster layoutRaster = kernelRasters.get(0);
+            SlopeEngine.computeRows(kernel, elevationData, elevationOffset + halo * elevationStride + halo - 1,
+                                    elevationStride, targetRectangle.height, pixelSizesX, pixelSizesY,
+                                    targetRectangle.y, invalidRows, halo, new SlopeEngine.RowTarget() {
+                        @Override
+                        public int getIndex(int y) {
+                            return layoutRaster.getIndex(y);
+                        }
+
+                        @Override
+                        public void rowComputed(int y) {
+                            writeRows(kernelRasters, y, times);
+                        }
+                    });
+        }
+        if (variance != null && !rowVariance) {
+            TerrainKernel.computeWindowVariance(elevationData, elevationOffset, elevationStride,
+                                                sourceRectangle.width, sourceRectangle.height, windowSize,
+                                                variance.data, variance.getIndex(0), variance.stride, NO_DATA_VALUE);
+            final List<TargetRaster> varianceRasters = Collections.singletonList(variance);
+            for (int y = 0; y < targetRectangle.height; y++) {
+                writeRows(varianceRasters, y, times);
+            }
+        }
+        if (cacheKey != null) {
+            putCachedTiles(cacheKey, targetTiles);
+        }
+    }
+
+    private void putCachedTiles(String cacheKey, Map<Band, Tile> targetTiles) {
+        int cachedSize = 0;
+        for (Band band : getTerrainBands()) {
+            final Tile tile = targetTiles.get(band);
+            if (tile != null) {
+                cachedSize += SlopeTileCache.getSize(tile, band.getDataType());
+            }
+        }
+        final ByteBuffer entry = ByteBuffer.allocate(cachedSize).order(ByteOrder.nativeOrder());
+        for (Band band : getTerrainBands()) {
+            final Tile tile = targetTiles.get(band);
+            if (tile != null) {
+                SlopeTileCache.write(tile, band.getDataType(), entry);
+            }
+        }
+        entry.flip();
+        tileCache.put(cacheKey, entry);
+    }
+
+    /**
+     * Tells whether a valid mask contains a valid pixel within the target rectangle, which is given relative to
+     * the mask extended by a halo.
+     */
+    /* package local for testing */
+    static boolean containsValidPixel(int[] validMask, int maskWidth, int halo, Rectangle targetRectangle) {
+        for (int y = 0; y < targetRectangle.height; y++) {
+            final int maskIndex = (y + halo) * maskWidth + halo;
+            for (int x = 0; x < targetRectangle.width; x++) {
+                if (validMask[maskIndex + x] != 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Determines the rows of a valid mask which contain invalid pixels.
+     *
+     * @return the flags of the rows containing invalid pixels, or {@code null} if all pixels are valid
+     */
+    /* package local for testing */
+    static boolean[] getInvalidRows(int[] validMask, int width, int height) {
+        boolean[] invalidRows = null;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (validMask[y * width + x] == 0) {
+                    if (invalidRows == null) {
+                        invalidRows = new boolean[height];
+                    }
+                    invalidRows[y] = true;
+                    break;
+                }
+            }
+        }
+        return invalidRows;
+    }
+
+    /**
+     * Copies elevation data into a new array without padding, replacing invalid elevations by NaN.
+     */
+    private static float[] applyValidMask(float[] elevationData, int offset, int stride, int[] validMask,
+                                          int width, int height) {
+        final float[] maskedData = new float[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                final int i = y * width + x;
+                maskedData[i] = validMask[i] != 0 ? elevationData[offset + y * stride + x] : Float.NaN;
+            }
+        }
+        return maskedData;
+    }
+
+    private static void writeRows(List<TargetRaster> rasters, int y, TileTimes times) {
+        final long writeStartNanos = times != null ? System.nanoTime() : 0L;
+        for (TargetRaster raster : rasters) {
+            raster.writeRow(y);
+        }
+        if (times != null) {
+            times.targetWriteNanos += System.nanoTime() - writeStartNanos;
+        }
+    }
+
+    private static float[] getData(TargetRaster raster) {
+        return raster != null ? raster.data : null;
+    }
+
+    private void computeOrientationTile(Rectangle targetRectangle, BorderExtender borderExtender,
+                                        Tile orientationTile, TileTimes times) {
+        final Rectangle sourceRectangle = getSourceRectangle(targetRectangle, 1);
+        final long fetchStartNanos = times != null ? System.nanoTime() : 0L;
+        // geo-locations are obtained for the whole source rectangle at once and reused for all target pixels
+        final float[] latData;
+        final float[] lonData;
+        if (latitudeRaster != null) {
+            latData = getSourceTile(latitudeRaster, sourceRectangle, borderExtender).getSamplesFloat();
+            lonData = getSourceTile(longitudeRaster, sourceRectangle, borderExtender).getSamplesFloat();
+        } else {
+            latData = new float[sourceRectangle.width * sourceRectangle.height];
+            lonData = new float[sourceRectangle.width * sourceRectangle.height];
+            computeGeoLocations(sourceGeoCoding, imageToGeoTransform, sourceRectangle, latData, lonData);
+        }
+        if (times != null) {
+            times.sourceFetchNanos += System.nanoTime() - fetchStartNanos;
+        }
+
+        final float[] orientationData = orientationTile.getDataBufferFloat();
+        final int targetOffset = orientationTile.getScanlineOffset();
+        final int targetStride = orientationTile.getScanlineStride();
+        for (int y = 0; y < targetRectangle.height; y++) {
+            final int sourceIndex = (y + 1) * sourceRectangle.width + 1;
+            final int targetIndex = targetOffset + y * targetStride;
+            for (int x = 0; x < targetRectangle.width; x++) {
+                orientationData[targetIndex + x] =
+                        (float) (computeOrientation(latData, lonData, sourceIndex + x) * MathUtils.RTOD);
             }
         }
     }
 
+    private void initGeoLocations() {
+        if (sourceGeoCoding instanceof TiePointGeoCoding) {
+            latitudeRaster = ((TiePointGeoCoding) sourceGeoCoding).getLatGrid();
+            longitudeRaster = ((TiePointGeoCoding) sourceGeoCoding).getLonGrid();
+        } else if (sourceGeoCoding instanceof BasicPixelGeoCoding) {
+            latitudeRaster = ((BasicPixelGeoCoding) sourceGeoCoding).getLatBand();
+            longitudeRaster = ((BasicPixelGeoCoding) sourceGeoCoding).getLonBand();
+        } else if (sourceGeoCoding instanceof CrsGeoCoding) {
+            try {
+                final MathTransform m2g = CRS.findMathTransform(sourceGeoCoding.getMapCRS(),
+                                                                DefaultGeographicCRS.WGS84);
+                imageToGeoTransform = ConcatenatedTransform.create(sourceGeoCoding.getImageToMapTransform(), m2g);
+            } catch (FactoryException e) {
+                throw new OperatorException("Unable to transform map coordinates to geographic coordinates", e);
+            }
+        }
+        if (latitudeRaster != null && !latitudeRaster.getRasterSize().equals(elevationBand.getRasterSize())) {
+            // in multi-size products the geo-location rasters may have another size than the elevation band,
+            // the geocoding is then asked pixel by pixel
+            latitudeRaster = null;
+            longitudeRaster = null;
+        }
+    }
+
+    /**
+     * Computes latitudes and longitudes of the pixel centres of a rectangle. If a transform from image to geographic
+     * coordinates is given, all pixels are transformed at once, otherwise the geocoding is asked pixel by pixel.
+     *
+     * @param geoCoding           - the geocoding
+     * @param imageToGeoTransform - the transform from image to (lon, lat) coordinates, may be {@code null}
+     * @param rectangle           - the pixel rectangle
+     * @param latData             - the latitudes, in row-major order
+     * @param lonData             - the longitudes, in row-major order
+     */
+    static void computeGeoLocations(GeoCoding geoCoding, MathTransform imageToGeoTransform, Rectangle rectangle,
+                                    float[] latData, float[] lonData) {
+        final int numPixels = rectangle.width * rectangle.height;
+        if (imageToGeoTransform != null) {
+            final double[] coordinates = new double[2 * numPixels];
+            int i = 0;
+            for (int y = rectangle.y; y < rectangle.y + rectangle.height; y++) {
+                for (int x = rectangle.x; x < rectangle.x + rectangle.width; x++) {
+                    coordinates[i++] = x + 0.5;
+                    coordinates[i++] = y + 0.5;
+                }
+            }
+            try {
+                imageToGeoTransform.transform(coordinates, 0, coordinates, 0, numPixels);
+            } catch (TransformException e) {
+                throw new OperatorException("Unable to compute geo-locations", e);
+            }
+            for (int j = 0; j < numPixels; j++) {
+                lonData[j] = (float) coordinates[2 * j];
+                latData[j] = (float) coordinates[2 * j + 1];
+            }
+        } else {
+            final PixelPos pixelPos = new PixelPos();
+            final GeoPos geoPos = new GeoPos();
+            int i = 0;
+            for (int y = rectangle.y; y < rectangle.y + rectangle.height; y++) {
+                for (int x = rectangle.x; x < rectangle.x + rectangle.width; x++) {
+                    pixelPos.setLocation(x + 0.5, y + 0.5);
+                    geoCoding.getGeoPos(pixelPos, geoPos);
+                    latData[i] = (float) geoPos.getLat();
+                    lonData[i] = (float) geoPos.getLon();
+                    i++;
+                }
+            }
+        }
+    }
 
     /**
      * Computes product spatial resolution from great circle distances at the product edges.
      * To be used as fallback if we have no CRS geocoding.
      *
-     * @param sourceProduct   - the source product
-     * @param sourceGeoCoding - the source scene geocoding
+     * @param width           - the raster width
+     * @param height          - the raster height
+     * @param sourceGeoCoding - the source raster geocoding
      * @return spatial resolution in metres
      */
-    static double computeSpatialResolution(Product sourceProduct, GeoCoding sourceGeoCoding) {
-        final int width = sourceProduct.getSceneRasterWidth();
-        final int height = sourceProduct.getSceneRasterHeight();
-
+    static double computeSpatialResolution(int width, int height, GeoCoding sourceGeoCoding) {
         final GeoPos leftPos = sourceGeoCoding.getGeoPos(new PixelPos(0, height / 2), null);
         final GeoPos rightPos = sourceGeoCoding.getGeoPos(new PixelPos(width - 1, height / 2), null);
         final double distance1 =
@@ -166,6 +767,64 @@ public class SlopeCalculationOp extends Operator {
         return 1000.0 * distance / (width - 1);
     }
 
+    /**
+     * Determines the metric pixel sizes for each image row of a raster. For projected CRS geocodings they are
+     * constant and taken from the affine transform, for geographic CRS geocodings they are computed per row, and
+     * for all other geocodings the raster-wide spatial resolution is used.
+     *
+     * @param raster      - the raster with a geocoding, e.g. the elevation band
+     * @param pixelSizesX - the pixel sizes in x direction in metres, one per row
+     * @param pixelSizesY - the pixel sizes in y direction in metres, one per row
+     */
+    static void computePixelSizes(RasterDataNode raster, double[] pixelSizesX, double[] pixelSizesY) {
+        final GeoCoding geoCoding = raster.getGeoCoding();
+        final int width = raster.getRasterWidth();
+        final int height = raster.getRasterHeight();
+        if (geoCoding instanceof CrsGeoCoding && geoCoding.getMapCRS() instanceof GeographicCRS) {
+            // pixel sizes are given in degrees, the metric sizes vary with latitude
+            computePixelSizes(geoCoding, width, height, pixelSizesX, pixelSizesY);
+        } else if (geoCoding instanceof CrsGeoCoding &&
+                geoCoding.getImageToMapTransform() instanceof AffineTransform) {
+            final MathTransform i2m = geoCoding.getImageToMapTransform();
+            Arrays.fill(pixelSizesX, Math.abs(((AffineTransform) i2m).getScaleX()));
+            Arrays.fill(pixelSizesY, Math.abs(((AffineTransform) i2m).getScaleY()));
+        } else {
+            final double spatialResolution = computeSpatialResolution(width, height, geoCoding);
+            Arrays.fill(pixelSizesX, spatialResolution);
+            Arrays.fill(pixelSizesY, spatialResolution);
+        }
+    }
+
+    /**
+     * Computes the metric pixel sizes for each image row from great circle distances across the pixel in the
+     * central column. To be used for geographic geocodings, where the pixel size in metres depends on latitude.
+     *
+     * @param geoCoding   - the geocoding
+     * @param width       - the raster width
+     * @param height      - the raster height
+     * @param pixelSizesX - the pixel sizes in x direction in metres, one per row
+     * @param pixelSizesY - the pixel sizes in y direction in metres, one per row
+     */
+    static void computePixelSizes(GeoCoding geoCoding, int width, int height,
+                                  double[] pixelSizesX, double[] pixelSizesY) {
+        final int x = width / 2;
+        final GeoPos leftPos = new GeoPos();
+        final GeoPos rightPos = new GeoPos();
+        final GeoPos upperPos = new GeoPos();
+        final GeoPos lowerPos = new GeoPos();
+        geoCoding.getGeoPos(new PixelPos(x + 0.5, 0.0), lowerPos);
+        for (int y = 0; y < height; y++) {
+            upperPos.setLocation(lowerPos.getLat(), lowerPos.getLon());
+            geoCoding.getGeoPos(new PixelPos(x + 0.5, y + 1.0), lowerPos);
+            geoCoding.getGeoPos(new PixelPos(x, y + 0.5), leftPos);
+            geoCoding.getGeoPos(new PixelPos(x + 1.0, y + 0.5), rightPos);
+            pixelSizesX[y] = 1000.0 *
+                    computeDistance(leftPos.getLat(), leftPos.getLon(), rightPos.getLat(), rightPos.getLon());
+            pixelSizesY[y] = 1000.0 *
+                    computeDistance(upperPos.getLat(), upperPos.getLon(), lowerPos.getLat(), lowerPos.getLon());
+        }
+    }
+
     /**
      * Calculate the great-circle distance between two points on Earth using Haversine formula.
      * See e.g. https://www.movable-type.co.uk/scripts/latlong.html
@@ -191,28 +850,6 @@ public class SlopeCalculationOp extends Operator {
         return R * c;
     }
 
-    /* package local for testing */
-    static float[] computeSlopeAspectVariance(double[] elev, double spatialResolution) {
-
-        double b = (elev[2] + 2 * elev[5] + elev[8] - elev[0] - 2 * elev[3] - elev[6]) / 8f;
-        double c = (elev[0] + 2 * elev[1] + elev[2] - elev[6] - 2 * elev[7] - elev[8]) / 8f;
-        float slope = (float) Math.atan(Math.sqrt(Math.pow(b / spatialResolution, 2) +
-                                                          Math.pow(c / spatialResolution, 2)));
-        float aspect = (float) Math.atan2(-b, -c);
-        if (aspect < 0.0f) {
-            // map from [-180, 180] into [0, 360], see e.g. https://www.e-education.psu.edu/geog480/node/490
-            aspect += 2.0 * Math.PI;
-        }
-        if (slope <= 0.0) {
-            aspect = Float.NaN;
-        }
-
-        final float variance = (float) StatUtils.variance(elev);
-
-        return new float[]{slope, aspect, variance};
-    }
-
-
     /* package local for testing */
     static float computeOrientation(float[] latData, float[] lonData, int sourceIndex) {
         float lat1 = latData[sourceIndex - 1];
@@ -222,31 +859,116 @@ public class SlopeCalculationOp extends Operator {
         return (float) Math.atan2(-(lat2 - lat1), (lon2 - lon1) * Math.cos(Math.toRadians(lat1)));
     }
 
-    private static Rectangle getSourceRectangle(Rectangle targetRectangle) {
-        return new Rectangle(targetRectangle.x - 1, targetRectangle.y - 1,
-                             targetRectangle.width + 2, targetRectangle.height + 2);
+    private static Rectangle getSourceRectangle(Rectangle targetRectangle, int halo) {
+        return new Rectangle(targetRectangle.x - halo, targetRectangle.y - halo,
+                             targetRectangle.width + 2 * halo, targetRectangle.height + 2 * halo);
     }
 
-    private Product createTargetProduct() {
-        final int sceneWidth = sourceProduct.getSceneRasterWidth();
-        final int sceneHeight = sourceProduct.getSceneRasterHeight();
+    static Product createTargetProduct(Band elevationBand) {
+        final Product sourceProduct = elevationBand.getProduct();
+        final int sceneWidth = elevationBand.getRasterWidth();
+        final int sceneHeight = elevationBand.getRasterHeight();
         Product targetProduct = new Product(TARGET_PRODUCT_NAME, TARGET_PRODUCT_TYPE, sceneWidth, sceneHeight);
-        ProductUtils.copyGeoCoding(sourceProduct, targetProduct);
+        if (elevationBand.getGeoCoding() == sourceProduct.getSceneGeoCoding()) {
+            ProductUtils.copyGeoCoding(sourceProduct, targetProduct);
+        } else {
+            // elevation band of a multi-size product, the target product has the size of the band
+            targetProduct.setSceneGeoCoding(elevationBand.getGeoCoding());
+        }
         targetProduct.setStartTime(sourceProduct.getStartTime());
         targetProduct.setEndTime(sourceProduct.getEndTime());
 
         return targetProduct;
     }
 
-    private Band createBand(String bandName, String description, String unit) {
-        Band band = targetProduct.addBand(bandName, ProductData.TYPE_FLOAT32);
+    static Band createBand(Product targetProduct, String bandName, String description, String unit) {
+        return createBand(targetProduct, bandName, description, unit, null);
+    }
+
+    static Band createBand(Product targetProduct, String bandName, String description, String unit,
+                           IntegerEncoding encoding) {
+        Band band = targetProduct.addBand(bandName,
+                                          encoding != null ? encoding.getDataType() : ProductData.TYPE_FLOAT32);
         band.setDescription(description);
         band.setUnit(unit);
-        band.setNoDataValue(-9999.);
-        band.setNoDataValueUsed(true);
+        if (encoding != null) {
+            encoding.applyTo(band);
+        } else {
+            band.setNoDataValue(NO_DATA_VALUE);
+            band.setNoDataValueUsed(true);
+        }
         return band;
     }
 
+    /**
+     * The times spent in the parts of a tile computation.
+     */
+    private static final class TileTimes {
+
+        private final long startNanos = System.nanoTime();
+        private long sourceFetchNanos;
+        private long targetWriteNanos;
+    }
+
+    /**
+     * The target tile of a terrain band. Float tiles are written in place, unless they are computed along with
+     * bands encoded as integers. Then the rows are computed into a buffer and copied or encoded into the tile row by
+     * row. Row buffers have a stride of zero, so that all rows are computed into the same buffer.
+     */
+    private static final class TargetRaster {
+
+        private final Tile tile;
+        private final IntegerEncoding encoding;
+        private final boolean buffered;
+        private final float[] data;
+        private final int offset;
+        private final int stride;
+
+        private TargetRaster(Tile tile, IntegerEncoding encoding, boolean buffered, int bufferHeight) {
+            this.tile = tile;
+            this.encoding = encoding;
+            this.buffered = buffered || encoding != null;
+            if (this.buffered) {
+                data = new float[tile.getWidth() * bufferHeight];
+                offset = 0;
+                stride = bufferHeight > 1 ? tile.getWidth() : 0;
+            } else {
+                data = tile.getDataBufferFloat();
+                offset = tile.getScanlineOffset();
+                stride = tile.getScanlineStride();
+            }
+        }
+
+        /**
+         * @return a raster for the tile, or {@code null} if there is no tile
+         */
+        static TargetRaster create(Tile tile, IntegerEncoding encoding, boolean buffered, int bufferHeight) {
+            return tile != null ? new TargetRaster(tile, encoding, buffered, bufferHeight) : null;
+        }
+
+        int getIndex(int y) {
+            return offset + y * stride;
+        }
+
+        void writeRow(int y) {
+            if (buffered) {
+                final int tileIndex = tile.getScanlineOffset() + y * tile.getScanlineStride();
+                if (encoding != null) {
+                    encoding.encode(data, getIndex(y), tile, tileIndex, tile.getWidth());
+                } else {
+                    System.arraycopy(data, getIndex(y), tile.getDataBufferFloat(), tileIndex, tile.getWidth());
+                }
+            }
+        }
+
+        void fill(float value) {
+            for (int y = 0; y < tile.getHeight(); y++) {
+                Arrays.fill(data, getIndex(y), getIndex(y) + tile.getWidth(), value);
+                writeRow(y);
+            }
+        }
+    }
+
     public static class Spi extends OperatorSpi {
 
         public Spi() {
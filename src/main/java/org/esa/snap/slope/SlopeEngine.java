@@ -0,0 +1,314 @@
+package org.esa.snap.slope;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Computes slope and aspect (both in degrees) and the 3x3 elevation variance of a DEM given as row-major
+ * {@code float[]} or {@link FloatBuffer}, without products, GPF or JAI. The DEM is divided into horizontal strips,
+ * which are computed in parallel on a {@link ForkJoinPool}, each with a halo of one row above and below. The results
+ * are written into caller-provided arrays or buffers of the size of the DEM, outputs given as {@code null} are
+ * neither written nor computed.
+ * <p>
+ * The results equal those of the {@link SlopeCalculationOp}, which computes its tiles with the same row loop: the
+ * DEM borders are extended by copying the edge pixels, and pixels whose 3x3 window contains a NaN elevation are set
+ * to {@link #NO_DATA_VALUE}. An engine holds no state besides its configuration and may be shared between threads.
+ */
+public class SlopeEngine {
+
+    public static final float NO_DATA_VALUE = -9999.0f;
+    static final int DEFAULT_STRIP_HEIGHT = 64;
+
+    private final GradientMethod gradientMethod;
+    private final ForkJoinPool pool;
+    private final int stripHeight;
+
+    /**
+     * Creates an engine running on the common fork/join pool.
+     *
+     * @param gradientMethod - the method for estimating the elevation gradient
+     */
+    public SlopeEngine(GradientMethod gradientMethod) {
+        this(gradientMethod, ForkJoinPool.commonPool(), DEFAULT_STRIP_HEIGHT);
+    }
+
+    /**
+     * @param gradientMethod - the method for estimating the elevation gradient
+     * @param pool           - the pool the strips are computed on
+     * @param stripHeight    - the maximum number of rows computed by one task
+     */
+    public SlopeEngine(GradientMethod gradientMethod, ForkJoinPool pool, int stripHeight) {
+        if (gradientMethod == null || pool == null) {
+            throw new IllegalArgumentException("Gradient method and pool must be given");
+        }
+        if (stripHeight < 1) {
+            throw new IllegalArgumentException("Strip height must be positive");
+        }
+        this.gradientMethod = gradientMethod;
+        this.pool = pool;
+        this.stripHeight = stripHeight;
+    }
+
+    /**
+     * Computes slope, aspect and elevation variance of a DEM array.
+     *
+     * @param elevations - the elevations in metres, row-major, invalid ones as NaN
+     * @param width      - the DEM width
+     * @param height     - the DEM height
+     * @param pixelSizeX - the pixel size in x direction in metres
+     * @param pixelSizeY - the pixel size in y direction in metres
+     * @param slope      - the slope target, may be {@code null}
+     * @param aspect     - the aspect target, may be {@code null}
+     * @param variance   - the variance target, may be {@code null}
+     */
+    public void compute(float[] elevations, int width, int height, double pixelSizeX, double pixelSizeY,
+                        float[] slope, float[] aspect, float[] variance) {
+        compute(wrap(elevations), width, height, pixelSizeX, pixelSizeY, wrap(slope), wrap(aspect), wrap(variance));
+    }
+
+    /**
+     * Computes slope, aspect and elevation variance of a DEM buffer. The DEM starts at the position of the elevation
+     * buffer, the results are written from the positions of the target buffers on. No buffer position is changed.
+     *
+     * @param elevations - the elevations in metres, row-major, invalid ones as NaN
+     * @param width      - the DEM width
+     * @param height     - the DEM height
+     * @param pixelSizeX - the pixel size in x direction in metres
+     * @param pixelSizeY - the pixel size in y direction in metres
+     * @param slope      - the slope target, may be {@code null}
+     * @param aspect     - the aspect target, may be {@code null}
+     * @param variance   - the variance target, may be {@code null}
+     */
+    public void compute(FloatBuffer elevations, int width, int height, double pixelSizeX, double pixelSizeY,
+                        FloatBuffer slope, FloatBuffer aspect, FloatBuffer variance) {
+        if (height < 1) {
+            throw new IllegalArgumentException("DEM width and height must be positive");
+        }
+        final double[] pixelSizesX = new double[height];
+        final double[] pixelSizesY = new double[height];
+        Arrays.fill(pixelSizesX, pixelSizeX);
+        Arrays.fill(pixelSizesY, pixelSizeY);
+        compute(elevations, width, height, pixelSizesX, pixelSizesY, slope, aspect, variance);
+    }
+
+    /**
+     * Computes slope, aspect and elevation variance of a DEM buffer with pixel sizes varying per row, as for
+     * geographic DEMs. The DEM starts at the position of the elevation buffer, the results are written from the
+     * positions of the target buffers on. No buffer position is changed.
+     *
+     * @param elevations  - the elevations in metres, row-major, invalid ones as NaN
+     * @param width       - the DEM width
+     * @param height      - the DEM height
+     * @param pixelSizesX - the pixel sizes in x direction in metres, one per row
+     * @param pixelSizesY - the pixel sizes in y direction in metres, one per row
+     * @param slope       - the slope target, may be {@code null}
+     * @param aspect      - the aspect target, may be {@code null}
+     * @param variance    - the variance target, may be {@code null}
+     */
+    public void compute(FloatBuffer elevations, int width, int height, double[] pixelSizesX, double[] pixelSizesY,
+                        FloatBuffer slope, FloatBuffer aspect, FloatBuffer variance) {
+        if (elevations == null) {
+            throw new IllegalArgumentException("Elevations must be given");
+        }
+        if (width < 1 || height < 1) {
+            throw new IllegalArgumentException("DEM width and height must be positive");
+        }
+        if (pixelSizesX.length < height || pixelSizesY.length < height) {
+            throw new IllegalArgumentException("Pixel sizes must be given for each row");
+        }
+        for (int y = 0; y < height; y++) {
+            if (!(pixelSizesX[y] > 0.0) || !(pixelSizesY[y] > 0.0)) {
+                throw new IllegalArgumentException("Pixel sizes must be positive");
+            }
+        }
+        final long size = (long) width * height;
+        for (FloatBuffer buffer : new FloatBuffer[]{elevations, slope, aspect, variance}) {
+            if (buffer != null && buffer.remaining() < size) {
+                throw new IllegalArgumentException("Buffers must hold at least width x height values");
+            }
+        }
+        if (slope == null && aspect == null && variance == null) {
+            return;
+        }
+        pool.invoke(new StripTask(elevations, width, height, pixelSizesX, pixelSizesY, slope, aspect, variance,
+                                  0, height));
+    }
+
+    /**
+     * Receives the rows computed by {@link #computeRows}.
+     */
+    interface RowTarget {
+
+        /**
+         * @return the index in the target data of the kernel the row is written to
+         */
+        int getIndex(int y);
+
+        /**
+         * Called when a row has been written into the target data of the kernel.
+         */
+        void rowComputed(int y);
+    }
+
+    /**
+     * Computes consecutive rows from padded elevation rows, setting pixels whose window contains a NaN elevation to
+     * {@link #NO_DATA_VALUE}. This is the row loop shared by the engine and the operator.
+     *
+     * @param kernel          - the kernel, writing into the target data
+     * @param elevations      - the padded elevations
+     * @param center          - index of the padded pixel left of the first pixel of the first row
+     * @param stride          - the scanline stride of the elevations
+     * @param rows            - the number of rows
+     * @param pixelSizesX     - the pixel sizes in x direction
+     * @param pixelSizesY     - the pixel sizes in y direction
+     * @param pixelSizeIndex  - index of the pixel sizes of the first row
+     * @param invalidRows     - the flags of the elevation rows containing NaN, {@code null} if none does
+     * @param invalidRowIndex - index of the flag of the elevation row of the first row
+     * @param target          - the receiver of the rows
+     */
+    static void computeRows(TerrainKernel kernel, float[] elevations, int center, int stride, int rows,
+                            double[] pixelSizesX, double[] pixelSizesY, int pixelSizeIndex,
+                            boolean[] invalidRows, int invalidRowIndex, RowTarget target) {
+        for (int y = 0; y < rows; y++) {
+            final int rowCenter = center + y * stride;
+            final int targetIndex = target.getIndex(y);
+            kernel.computeRow(elevations, rowCenter - stride, rowCenter, rowCenter + stride,
+                              pixelSizesX[pixelSizeIndex + y], pixelSizesY[pixelSizeIndex + y], targetIndex);
+            final int i = invalidRowIndex + y;
+            if (invalidRows != null && (invalidRows[i - 1] || invalidRows[i] || invalidRows[i + 1])) {
+                kernel.fillInvalid(elevations, rowCenter - stride, rowCenter, rowCenter + stride, targetIndex,
+                                   NO_DATA_VALUE);
+            }
+            target.rowComputed(y);
+        }
+    }
+
+    /**
+     * Copies the rows of a strip with one row above and below into padded rows of width + 2 elevations, extending
+     * the DEM borders by copying the edge pixels. Padded row j holds DEM row stripY - 1 + j. This is the padding
+     * shared by the engine and the statistics processor.
+     *
+     * @param elevations       - the elevations of the DEM rows from firstRow on, starting at the buffer position,
+     *                           which is not changed
+     * @param firstRow         - the DEM row at the buffer position
+     * @param width            - the DEM width
+     * @param height           - the DEM height
+     * @param stripY           - the first DEM row of the strip
+     * @param stripRows        - the number of rows of the strip
+     * @param paddedElevations - receives the stripRows + 2 padded rows
+     * @return the flags of the padded rows containing NaN, {@code null} if none does
+     */
+    static boolean[] padStrip(FloatBuffer elevations, int firstRow, int width, int height, int stripY, int stripRows,
+                              float[] paddedElevations) {
+        final int stride = width + 2;
+        boolean[] invalidRows = null;
+        final FloatBuffer source = elevations.duplicate();
+        final int sourcePosition = elevations.position();
+        for (int j = 0; j < stripRows + 2; j++) {
+            final int y = Math.min(Math.max(stripY - 1 + j, 0), height - 1);
+            final int paddedIndex = j * stride;
+            source.position(sourcePosition + (y - firstRow) * width);
+            source.get(paddedElevations, paddedIndex + 1, width);
+            paddedElevations[paddedIndex] = paddedElevations[paddedIndex + 1];
+            paddedElevations[paddedIndex + width + 1] = paddedElevations[paddedIndex + width];
+            for (int i = 1; i <= width; i++) {
+                if (Float.isNaN(paddedElevations[paddedIndex + i])) {
+                    if (invalidRows == null) {
+                        invalidRows = new boolean[stripRows + 2];
+                    }
+                    invalidRows[j] = true;
+                    break;
+                }
+            }
+        }
+        return invalidRows;
+    }
+
+    private static FloatBuffer wrap(float[] data) {
+        return data != null ? FloatBuffer.wrap(data) : null;
+    }
+
+    /**
+     * Computes a strip of rows, or splits it into two tasks if higher than the strip height.
+     */
+    @SuppressWarnings("serial") // the task is never serialised
+    private final class StripTask extends RecursiveAction {
+
+        private final FloatBuffer elevations;
+        private final int width;
+        private final int height;
+        private final double[] pixelSizesX;
+        private final double[] pixelSizesY;
+        private final FloatBuffer slope;
+        private final FloatBuffer aspect;
+        private final FloatBuffer variance;
+        private final int stripY;
+        private final int stripRows;
+
+        private StripTask(FloatBuffer elevations, int width, int height, double[] pixelSizesX,
+                          double[] pixelSizesY, FloatBuffer slope, FloatBuffer aspect, FloatBuffer variance,
+                          int stripY, int stripRows) {
+            this.elevations = elevations;
+            this.width = width;
+            this.height = height;
+            this.pixelSizesX = pixelSizesX;
+            this.pixelSizesY = pixelSizesY;
+            this.slope = slope;
+            this.aspect = aspect;
+            this.variance = variance;
+            this.stripY = stripY;
+            this.stripRows = stripRows;
+        }
+
+        @Override
+        protected void compute() {
+            if (stripRows > stripHeight) {
+                final int upperRows = stripRows / 2;
+                invokeAll(createTask(stripY, upperRows), createTask(stripY + upperRows, stripRows - upperRows));
+                return;
+            }
+
+            final int stride = width + 2;
+            final float[] paddedElevations = new float[(stripRows + 2) * stride];
+            final boolean[] invalidRows = padStrip(elevations, 0, width, height, stripY, stripRows, paddedElevations);
+
+            // the kernel writes into row arrays, which are copied into the targets
+            final float[] slopeRow = slope != null ? new float[width] : null;
+            final float[] aspectRow = aspect != null ? new float[width] : null;
+            final float[] varianceRow = variance != null ? new float[width] : null;
+            final TerrainKernel kernel = new TerrainKernel(gradientMethod, width, slopeRow, aspectRow, varianceRow);
+            final FloatBuffer slopeTarget = slope != null ? slope.duplicate() : null;
+            final FloatBuffer aspectTarget = aspect != null ? aspect.duplicate() : null;
+            final FloatBuffer varianceTarget = variance != null ? variance.duplicate() : null;
+            computeRows(kernel, paddedElevations, stride, stride, stripRows, pixelSizesX, pixelSizesY, stripY,
+                        invalidRows, 1, new RowTarget() {
+                        @Override
+                        public int getIndex(int y) {
+                            return 0;
+                        }
+
+                        @Override
+                        public void rowComputed(int y) {
+                            final int targetOffset = (stripY + y) * width;
+                            put(slopeRow, slopeTarget, slope, targetOffset);
+                            put(aspectRow, aspectTarget, aspect, targetOffset);
+                            put(varianceRow, varianceTarget, variance, targetOffset);
+                        }
+                    });
+        }
+
+        private StripTask createTask(int y, int rows) {
+            return new StripTask(elevations, width, height, pixelSizesX, pixelSizesY, slope, aspect, variance,
+                                 y, rows);
+        }
+
+        private void put(float[] row, FloatBuffer target, FloatBuffer buffer, int offset) {
+            if (row != null) {
+                target.position(buffer.position() + offset);
+                target.put(row);
+            }
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package org.esa.snap.slope;
+
+import java.util.Locale;
+
+/**
+ * Summary statistics of slope and aspect over a zone: pixel count, moments, minimum and maximum of the slope, a slope
+ * histogram of {@link #SLOPE_BIN_WIDTH} degree bins and an aspect rose of {@link #ASPECT_SECTOR_COUNT} sectors,
+ * the first one centred on North. Pixels with zero slope have no aspect and are only counted as flat pixels.
+ * <p>
+ * Percentiles are interpolated linearly within the histogram bins, their error is at most one bin width. Statistics
+ * computed for parts of a zone are combined with {@link #merge(SlopeStatistics)}, the moments with the pairwise
+ * update of Chan et al., so that the result does not depend on how the zone was split, up to rounding of the mean
+ * and variance in their last bits.
+ */
+public class SlopeStatistics {
+
+    public static final double SLOPE_BIN_WIDTH = 0.5;
+    public static final int SLOPE_BIN_COUNT = 180;
+    public static final int ASPECT_SECTOR_COUNT = 16;
+    private static final double ASPECT_SECTOR_WIDTH = 360.0 / ASPECT_SECTOR_COUNT;
+
+    private long count;
+    private double mean;
+    private double m2;
+    private double min = Double.NaN;
+    private double max = Double.NaN;
+    private long flatCount;
+    private final long[] slopeHistogram = new long[SLOPE_BIN_COUNT];
+    private final long[] aspectRose = new long[ASPECT_SECTOR_COUNT];
+
+    /**
+     * Adds a pixel.
+     *
+     * @param slope  - the slope in degrees
+     * @param aspect - the aspect in degrees, NaN for flat pixels
+     */
+    public void accumulate(float slope, float aspect) {
+        count++;
+        final double delta = slope - mean;
+        mean += delta / count;
+        m2 += delta * (slope - mean);
+        if (count == 1) {
+            min = slope;
+            max = slope;
+        } else if (slope < min) {
+            min = slope;
+        } else if (slope > max) {
+            max = slope;
+        }
+        slopeHistogram[getSlopeBin(slope)]++;
+        if (Float.isNaN(aspect)) {
+            flatCount++;
+        } else {
+            aspectRose[getAspectSector(aspect)]++;
+        }
+    }
+
+    /**
+     * Adds the pixels of other statistics.
+     */
+    public void merge(SlopeStatistics other) {
+        if (other.count == 0) {
+            return;
+        }
+        if (count == 0) {
+            min = other.min;
+            max = other.max;
+        } else {
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+        }
+        final long mergedCount = count + other.count;
+        final double delta = other.mean - mean;
+        mean += delta * other.count / mergedCount;
+        m2 += other.m2 + delta * delta * ((double) count * other.count / mergedCount);
+        count = mergedCount;
+        flatCount += other.flatCount;
+        for (int i = 0; i < SLOPE_BIN_COUNT; i++) {
+            slopeHistogram[i] += other.slopeHistogram[i];
+        }
+        for (int i = 0; i < ASPECT_SECTOR_COUNT; i++) {
+            aspectRose[i] += other.aspectRose[i];
+        }
+    }
+
+    public long getPixelCount() {
+        return count;
+    }
+
+    /**
+     * @return the number of pixels with zero slope, which are not counted in the aspect rose
+     */
+    public long getFlatPixelCount() {
+        return flatCount;
+    }
+
+    public double getMean() {
+        return count > 0 ? mean : Double.NaN;
+    }
+
+    /**
+     * @return the sample standard deviation of the slope
+     */
+    public double getStandardDeviation() {
+        return count > 1 ? Math.sqrt(m2 / (count - 1)) : Double.NaN;
+    }
+
+    public double getMin() {
+        return min;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    /**
+     * @param percentile - the percentile, from 0 to 100
+     * @return the slope below which the given percentage of pixels lies
+     */
+    public double getPercentile(double percentile) {
+        if (count == 0) {
+            return Double.NaN;
+        }
+        final double rank = percentile / 100.0 * count;
+        long cumulativeCount = 0;
+        for (int i = 0; i < SLOPE_BIN_COUNT; i++) {
+            final long binCount = slopeHistogram[i];
+            if (binCount > 0 && cumulativeCount + binCount >= rank) {
+                final double value = (i + (rank - cumulativeCount) / binCount) * SLOPE_BIN_WIDTH;
+                return Math.min(Math.max(value, min), max);
+            }
+            cumulativeCount += binCount;
+        }
+        return max;
+    }
+
+    /**
+     * @return the pixel counts of the slope bins, bin i covering [i, i + 1) times the bin width
+     */
+    public long[] getSlopeHistogram() {
+        return slopeHistogram.clone();
+    }
+
+    /**
+     * @return the pixel counts of the aspect sectors, sector i centred on i times 360 / {@link #ASPECT_SECTOR_COUNT}
+     * degrees clockwise from North
+     */
+    public long[] getAspectRose() {
+        return aspectRose.clone();
+    }
+
+    /* package local for testing */
+    static int getSlopeBin(float slope) {
+        final int bin = (int) (slope / SLOPE_BIN_WIDTH);
+        return bin < SLOPE_BIN_COUNT ? bin : SLOPE_BIN_COUNT - 1;
+    }
+
+    /* package local for testing */
+    static int getAspectSector(float aspect) {
+        return (int) ((aspect + 0.5 * ASPECT_SECTOR_WIDTH) / ASPECT_SECTOR_WIDTH) % ASPECT_SECTOR_COUNT;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ENGLISH,
+                             "%d pixels, slope mean %.2f deg, std %.2f deg, min %.2f deg, median %.2f deg, " +
+                                     "p90 %.2f deg, max %.2f deg",
+                             count, getMean(), getStandardDeviation(), min, getPercentile(50.0),
+                             getPercentile(90.0), max);
+    }
+}
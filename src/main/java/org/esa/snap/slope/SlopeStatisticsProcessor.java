@@ -0,0 +1,376 @@
+package org.esa.snap.slope;
+
+import com.bc.ceres.core.ProgressMonitor;
+import org.esa.snap.core.dataio.ProductIO;
+import org.esa.snap.core.datamodel.Band;
+import org.esa.snap.core.datamodel.Mask;
+import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.core.util.SystemUtils;
+
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+import static org.esa.snap.slope.SlopeCalculationOp.*;
+
+/**
+ * Computes {@link SlopeStatistics} of a DEM, for the whole scene, per label of a label band or per mask, without
+ * creating any target raster. The elevation band is divided into horizontal strips, which are processed in parallel
+ * by the row loop of the {@link SlopeEngine}. Each strip yields partial statistics per zone, which are merged into
+ * the result. The results equal the statistics of the slope and aspect bands of the operator with the same gradient
+ * method: the image borders are extended by copying the edge pixels, pixels whose window contains an elevation
+ * outside the valid mask of the elevation band are ignored.
+ */
+public class SlopeStatisticsProcessor {
+
+    static final int DEFAULT_STRIP_HEIGHT = 256;
+
+    private final Band elevationBand;
+    private final GradientMethod gradientMethod;
+    private final int parallelism;
+    private final int stripHeight;
+
+    public SlopeStatisticsProcessor(Band elevationBand, GradientMethod gradientMethod, int parallelism) {
+        this(elevationBand, gradientMethod, parallelism, DEFAULT_STRIP_HEIGHT);
+    }
+
+    /**
+     * @param elevationBand  - the elevation band with a geocoding, it must belong to a product
+     * @param gradientMethod - the method for estimating the elevation gradient
+     * @param parallelism    - the number of strips processed at once
+     * @param stripHeight    - the number of rows of a strip
+     */
+    public SlopeStatisticsProcessor(Band elevationBand, GradientMethod gradientMethod, int parallelism,
+                                    int stripHeight) {
+        if (elevationBand.getProduct() == null || elevationBand.getGeoCoding() == null) {
+            throw new IllegalArgumentException("Elevation band must belong to a product with a geo-coding");
+        }
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive");
+        }
+        if (stripHeight < 1) {
+            throw new IllegalArgumentException("Strip height must be positive");
+        }
+        this.elevationBand = elevationBand;
+        this.gradientMethod = gradientMethod;
+        this.parallelism = parallelism;
+        this.stripHeight = stripHeight;
+    }
+
+    /**
+     * @param pm - a progress monitor
+     * @return the statistics of the whole scene
+     * @throws IOException if the elevation data cannot be read
+     */
+    public SlopeStatistics computeStatistics(ProgressMonitor pm) throws IOException {
+        final Map<String, SlopeStatistics> statistics = computeStatistics(SceneZones::new, pm);
+        return statistics.isEmpty() ? new SlopeStatistics() : statistics.get(SceneZones.KEY);
+    }
+
+    /**
+     * @param labelBand - an integer band of the size of the elevation band, its valid mask is honoured
+     * @param pm        - a progress monitor
+     * @return the statistics per label, in ascending order of the labels, labels without valid pixels are missing
+     * @throws IOException if the elevation or label data cannot be read
+     */
+    public Map<Integer, SlopeStatistics> computeStatistics(Band labelBand, ProgressMonitor pm) throws IOException {
+        return new TreeMap<>(computeStatistics(() -> new LabelZones(labelBand), pm));
+    }
+
+    /**
+     * @param masks - the masks, of the size of the elevation band, a pixel may belong to several masks
+     * @param pm    - a progress monitor
+     * @return the statistics per mask name, in the order of the masks
+     * @throws IOException if the elevation or mask data cannot be read
+     */
+    public Map<String, SlopeStatistics> computeStatistics(Mask[] masks, ProgressMonitor pm) throws IOException {
+        final Map<String, SlopeStatistics> statistics = new LinkedHashMap<>();
+        for (Mask mask : masks) {
+            statistics.put(mask.getName(), new SlopeStatistics());
+        }
+        final Map<String, SlopeStatistics> maskStatistics = computeStatistics(() -> new MaskZones(masks), pm);
+        for (Map.Entry<String, SlopeStatistics> entry : maskStatistics.entrySet()) {
+            statistics.get(entry.getKey()).merge(entry.getValue());
+        }
+        return statistics;
+    }
+
+    private <K> Map<K, SlopeStatistics> computeStatistics(Supplier<Zones<K>> zonesSupplier, ProgressMonitor pm)
+            throws IOException {
+        final int height = elevationBand.getRasterHeight();
+        final double[] pixelSizesX = new double[height];
+        final double[] pixelSizesY = new double[height];
+        computePixelSizes(elevationBand, pixelSizesX, pixelSizesY);
+
+        final List<Future<Map<K, SlopeStatistics>>> futures = new ArrayList<>();
+        final ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        final Map<K, SlopeStatistics> statistics = new LinkedHashMap<>();
+        pm.beginTask("Computing slope statistics", (height + stripHeight - 1) / stripHeight);
+        try {
+            for (int y = 0; y < height; y += stripHeight) {
+                final int stripY = y;
+                final int stripRows = Math.min(stripHeight, height - y);
+                final Callable<Map<K, SlopeStatistics>> task = () -> computeStrip(stripY, stripRows,
+                                                                                   zonesSupplier.get(),
+                                                                                   pixelSizesX, pixelSizesY);
+                futures.add(executor.submit(task));
+            }
+            // partial statistics are merged in strip order, so that the results are reproducible
+            for (Future<Map<K, SlopeStatistics>> future : futures) {
+                for (Map.Entry<K, SlopeStatistics> entry : getResult(future).entrySet()) {
+                    final SlopeStatistics zoneStatistics = statistics.get(entry.getKey());
+                    if (zoneStatistics == null) {
+                        statistics.put(entry.getKey(), entry.getValue());
+                    } else {
+                        zoneStatistics.merge(entry.getValue());
+                    }
+                }
+                pm.worked(1);
+            }
+        } finally {
+            executor.shutdownNow();
+            pm.done();
+        }
+        return statistics;
+    }
+
+    private static <T> T getResult(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IllegalStateException("Unable to compute slope statistics", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while computing slope statistics", e);
+        }
+    }
+
+    private <K> Map<K, SlopeStatistics> computeStrip(int stripY, int stripRows, Zones<K> zones,
+                                                     double[] pixelSizesX, double[] pixelSizesY) throws IOException {
+        final Product product = elevationBand.getProduct();
+        final int width = elevationBand.getRasterWidth();
+        final int height = elevationBand.getRasterHeight();
+
+        // the strip with one row above and below, as far as inside the raster
+        final int readY = Math.max(stripY - 1, 0);
+        final int readRows = Math.min(stripY + stripRows + 1, height) - readY;
+        final float[] elevations = new float[readRows * width];
+        // product readers are not required to be thread-safe, only the computation runs in parallel
+        synchronized (product) {
+            elevationBand.readPixels(0, readY, width, readRows, elevations);
+            if (elevationBand.isValidMaskUsed()) {
+                final boolean[] validMask = new boolean[elevations.length];
+                elevationBand.readValidMask(0, readY, width, readRows, validMask);
+                for (int i = 0; i < elevations.length; i++) {
+                    if (!validMask[i]) {
+                        elevations[i] = Float.NaN;
+                    }
+                }
+            }
+            zones.read(stripY, width, stripRows);
+        }
+
+        final int stride = width + 2;
+        final float[] paddedElevations = new float[(stripRows + 2) * stride];
+        final boolean[] invalidRows = SlopeEngine.padStrip(FloatBuffer.wrap(elevations), readY, width, height,
+                                                           stripY, stripRows, paddedElevations);
+
+        final float[] slope = new float[width];
+        final float[] aspect = new float[width];
+        final TerrainKernel kernel = new TerrainKernel(gradientMethod, width, slope, aspect, null);
+        SlopeEngine.computeRows(kernel, paddedElevations, stride, stride, stripRows, pixelSizesX, pixelSizesY, stripY,
+                                invalidRows, 1, new SlopeEngine.RowTarget() {
+                    @Override
+                    public int getIndex(int y) {
+                        return 0;
+                    }
+
+                    @Override
+                    public void rowComputed(int y) {
+                        final int zoneIndex = y * width;
+                        for (int x = 0; x < width; x++) {
+                            if (slope[x] != NO_DATA_VALUE) {
+                                zones.accumulate(zoneIndex + x, slope[x], aspect[x]);
+                            }
+                        }
+                    }
+                });
+        return zones.getStatistics();
+    }
+
+    /**
+     * Computes slope statistics of a product file and prints them.
+     * Usage: {@code SlopeStatisticsProcessor <source-file> [<elevation-band-name> [<label-band-or-mask-name>]]}
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: SlopeStatisticsProcessor <source-file> " +
+                                       "[<elevation-band-name> [<label-band-or-mask-name>]]");
+            System.exit(1);
+        }
+        SystemUtils.init3rdPartyLibs(SlopeStatisticsProcessor.class.getClassLoader());
+        final String elevationBandName = args.length > 1 ? args[1] : "elevation";
+
+        final Product sourceProduct = ProductIO.readProduct(args[0]);
+        if (sourceProduct == null) {
+            throw new IOException("No reader found for '" + args[0] + "'");
+        }
+        try {
+            final Band elevationBand = sourceProduct.getBand(elevationBandName);
+            if (elevationBand == null) {
+                throw new IOException("Source product has no band '" + elevationBandName + "'");
+            }
+            final SlopeStatisticsProcessor processor = new SlopeStatisticsProcessor(
+                    elevationBand, GradientMethod.HORN, Runtime.getRuntime().availableProcessors());
+            if (args.length < 3) {
+                System.out.println(processor.computeStatistics(ProgressMonitor.NULL));
+                return;
+            }
+            final Map<?, SlopeStatistics> statistics;
+            final Mask mask = sourceProduct.getMaskGroup().get(args[2]);
+            if (mask != null) {
+                statistics = processor.computeStatistics(new Mask[]{mask}, ProgressMonitor.NULL);
+            } else if (sourceProduct.getBand(args[2]) != null) {
+                statistics = processor.computeStatistics(sourceProduct.getBand(args[2]), ProgressMonitor.NULL);
+            } else {
+                throw new IOException("Source product has no band or mask '" + args[2] + "'");
+            }
+            for (Map.Entry<?, SlopeStatistics> entry : statistics.entrySet()) {
+                System.out.println(entry.getKey() + ": " + entry.getValue());
+            }
+        } finally {
+            sourceProduct.dispose();
+        }
+    }
+
+    /**
+     * Assigns the pixels of a strip to zones and accumulates their statistics. Instances are confined to one strip.
+     */
+    private interface Zones<K> {
+
+        void read(int y, int width, int rows) throws IOException;
+
+        void accumulate(int index, float slope, float aspect);
+
+        Map<K, SlopeStatistics> getStatistics();
+    }
+
+    private static final class SceneZones implements Zones<String> {
+
+        private static final String KEY = "scene";
+
+        private final SlopeStatistics statistics = new SlopeStatistics();
+
+        @Override
+        public void read(int y, int width, int rows) {
+        }
+
+        @Override
+        public void accumulate(int index, float slope, float aspect) {
+            statistics.accumulate(slope, aspect);
+        }
+
+        @Override
+        public Map<String, SlopeStatistics> getStatistics() {
+            return statistics.getPixelCount() > 0 ?
+                    Collections.singletonMap(KEY, statistics) : Collections.emptyMap();
+        }
+    }
+
+    private static final class LabelZones implements Zones<Integer> {
+
+        private final Band labelBand;
+        private final Map<Integer, SlopeStatistics> statistics = new HashMap<>();
+        private int[] labels;
+        private boolean[] validMask;
+        // labels tend to come in runs, the statistics of the last label are looked up once per run
+        private int lastLabel;
+        private SlopeStatistics lastStatistics;
+
+        private LabelZones(Band labelBand) {
+            this.labelBand = labelBand;
+        }
+
+        @Override
+        public void read(int y, int width, int rows) throws IOException {
+            labels = labelBand.readPixels(0, y, width, rows, new int[width * rows]);
+            if (labelBand.isValidMaskUsed()) {
+                validMask = labelBand.readValidMask(0, y, width, rows, new boolean[width * rows]);
+            }
+        }
+
+        @Override
+        public void accumulate(int index, float slope, float aspect) {
+            if (validMask != null && !validMask[index]) {
+                return;
+            }
+            final int label = labels[index];
+            if (lastStatistics == null || label != lastLabel) {
+                lastStatistics = statistics.computeIfAbsent(label, k -> new SlopeStatistics());
+                lastLabel = label;
+            }
+            lastStatistics.accumulate(slope, aspect);
+        }
+
+        @Override
+        public Map<Integer, SlopeStatistics> getStatistics() {
+            return statistics;
+        }
+    }
+
+    private static final class MaskZones implements Zones<String> {
+
+        private final Mask[] masks;
+        private final SlopeStatistics[] statistics;
+        private final int[][] maskData;
+
+        private MaskZones(Mask[] masks) {
+            this.masks = masks;
+            statistics = new SlopeStatistics[masks.length];
+            for (int i = 0; i < masks.length; i++) {
+                statistics[i] = new SlopeStatistics();
+            }
+            maskData = new int[masks.length][];
+        }
+
+        @Override
+        public void read(int y, int width, int rows) throws IOException {
+            for (int i = 0; i < masks.length; i++) {
+                maskData[i] = masks[i].readPixels(0, y, width, rows, new int[width * rows]);
+            }
+        }
+
+        @Override
+        public void accumulate(int index, float slope, float aspect) {
+            for (int i = 0; i < masks.length; i++) {
+                if (maskData[i][index] != 0) {
+                    statistics[i].accumulate(slope, aspect);
+                }
+            }
+        }
+
+        @Override
+        public Map<String, SlopeStatistics> getStatistics() {
+            final Map<String, SlopeStatistics> result = new HashMap<>();
+            for (int i = 0; i < masks.length; i++) {
+                result.put(masks[i].getName(), statistics[i]);
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,325 @@
+package org.esa.snap.slope;
+
+import com.bc.ceres.core.ProgressMonitor;
+import org.esa.snap.core.dataio.ProductIO;
+import org.esa.snap.core.dataio.ProductWriter;
+import org.esa.snap.core.datamodel.Band;
+import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.core.datamodel.ProductData;
+import org.esa.snap.core.util.SystemUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.esa.snap.slope.SlopeCalculationOp.*;
+
+/**
+ * Computes slope, aspect and elevation variance for DEMs of arbitrary size without GPF and the JAI tile cache.
+ * The elevation band is read in horizontal strips, its rows are passed through a ring buffer of three rows to the
+ * row kernel of the {@link SlopeCalculationOp}, and each computed row is handed to a {@link ProductWriter} at once.
+ * Memory use is proportional to the raster width only. The image borders are extended by copying the edge pixels,
+ * as in the operator. Pixels whose window contains an elevation outside the valid mask of the elevation band are set
+ * to no-data.
+ * <p>
+ * The gradient method and a selection of the slope, aspect and elevation variance bands can be given, by default
+ * all three bands are computed with the {@link GradientMethod#HORN} method. Unlike the operator, the processor
+ * always writes float bands, computes the variance over 3x3 pixels only and provides none of the other outputs, so
+ * its results equal those of the operator for the default output encoding and window size only.
+ */
+public class SlopeStreamingProcessor {
+
+    static final int DEFAULT_STRIP_HEIGHT = 64;
+
+    static final String[] DEFAULT_OUTPUT_BANDS = {SLOPE_BAND_NAME, ASPECT_BAND_NAME, VARIANCE_BAND_NAME};
+
+    private final Band elevationBand;
+    private final GradientMethod gradientMethod;
+    private final List<String> outputBands;
+    private final int stripHeight;
+
+    public SlopeStreamingProcessor(Band elevationBand) {
+        this(elevationBand, DEFAULT_STRIP_HEIGHT);
+    }
+
+    /**
+     * @param elevationBand - the elevation band with a geocoding, it must belong to a product
+     * @param stripHeight   - the number of elevation rows read at once
+     */
+    public SlopeStreamingProcessor(Band elevationBand, int stripHeight) {
+        this(elevationBand, GradientMethod.HORN, DEFAULT_OUTPUT_BANDS, stripHeight);
+    }
+
+    /**
+     * @param elevationBand  - the elevation band with a geocoding, it must belong to a product
+     * @param gradientMethod - the method for estimating the elevation gradient
+     * @param outputBands    - the names of the bands to be computed, any of 'slope', 'aspect' and
+     *                       'elevation_variance'
+     * @param stripHeight    - the number of elevation rows read at once
+     */
+    public SlopeStreamingProcessor(Band elevationBand, GradientMethod gradientMethod, String[] outputBands,
+                                   int stripHeight) {
+        if (elevationBand.getProduct() == null || elevationBand.getGeoCoding() == null) {
+            throw new IllegalArgumentException("Elevation band must belong to a product with a geo-coding");
+        }
+        if (gradientMethod == null) {
+            throw new IllegalArgumentException("Gradient method must be given");
+        }
+        if (outputBands == null || outputBands.length == 0) {
+            throw new IllegalArgumentException("At least one output band must be selected");
+        }
+        for (String outputBand : outputBands) {
+            if (!Arrays.asList(DEFAULT_OUTPUT_BANDS).contains(outputBand)) {
+                throw new IllegalArgumentException("Output band '" + outputBand + "' is not supported");
+            }
+        }
+        if (stripHeight < 1) {
+            throw new IllegalArgumentException("Strip height must be positive");
+        }
+        this.elevationBand = elevationBand;
+        this.gradientMethod = gradientMethod;
+        this.outputBands = Arrays.asList(outputBands);
+        this.stripHeight = stripHeight;
+    }
+
+    /**
+     * Computes the selected bands and writes them row by row into a new product file.
+     *
+     * @param targetFile - the target file
+     * @param formatName - the name of the target product format, e.g. 'BEAM-DIMAP' or 'GeoTIFF'
+     * @param pm         - a progress monitor
+     * @throws IOException if the elevation data cannot be read or the target product cannot be written
+     */
+    public void process(File targetFile, String formatName, ProgressMonitor pm) throws IOException {
+        process(targetFile, formatName, null, pm);
+    }
+
+    /**
+     * Computes slope, aspect and elevation variance with the elevations around the raster taken from a halo, e.g.
+     * from neighbouring DEM tiles, instead of copies of the edge pixels.
+     *
+     * @param targetFile - the target file
+     * @param formatName - the name of the target product format
+     * @param halo       - the elevations around the raster, may be {@code null}
+     * @param pm         - a progress monitor
+     * @throws IOException if the elevation data cannot be read or the target product cannot be written
+     */
+    void process(File targetFile, String formatName, Halo halo, ProgressMonitor pm) throws IOException {
+        final ProductWriter writer = ProductIO.getProductWriter(formatName);
+        if (writer == null) {
+            throw new IOException("No product writer found for format '" + formatName + "'");
+        }
+        final int width = elevationBand.getRasterWidth();
+        final int height = elevationBand.getRasterHeight();
+        final double[] pixelSizesX = new double[height];
+        final double[] pixelSizesY = new double[height];
+        computePixelSizes(elevationBand, pixelSizesX, pixelSizesY);
+
+        // bands which are not selected are neither created nor computed
+        final Product targetProduct = createTargetProduct(elevationBand);
+        final Band slopeBand = outputBands.contains(SLOPE_BAND_NAME) ?
+                createBand(targetProduct, SLOPE_BAND_NAME, SLOPE_BAND_DESCRIPTION, SLOPE_BAND_UNIT) : null;
+        final Band aspectBand = outputBands.contains(ASPECT_BAND_NAME) ?
+                createBand(targetProduct, ASPECT_BAND_NAME, ASPECT_BAND_DESCRIPTION, ASPECT_BAND_UNIT) : null;
+        final Band varianceBand = outputBands.contains(VARIANCE_BAND_NAME) ?
+                createBand(targetProduct, VARIANCE_BAND_NAME, VARIANCE_BAND_DESCRIPTION, VARIANCE_BAND_UNIT) : null;
+
+        final float[] slope = slopeBand != null ? new float[width] : null;
+        final float[] aspect = aspectBand != null ? new float[width] : null;
+        final float[] variance = varianceBand != null ? new float[width] : null;
+        final ProductData slopeData = slope != null ? ProductData.createInstance(slope) : null;
+        final ProductData aspectData = aspect != null ? ProductData.createInstance(aspect) : null;
+        final ProductData varianceData = variance != null ? ProductData.createInstance(variance) : null;
+
+        // row y is kept in ring slot (y + 1) % 3, the rows above the first and below the last row are copies
+        final int stride = width + 2;
+        final float[] ring = new float[3 * stride];
+        final boolean[] invalidSlots = new boolean[3];
+        final StripReader reader = new StripReader(elevationBand, width, height, stripHeight, halo);
+        final TerrainKernel kernel = new TerrainKernel(gradientMethod, width, slope, aspect, variance);
+
+        pm.beginTask("Computing " + String.join(", ", outputBands), height);
+        try {
+            writer.writeProductNodes(targetProduct, targetFile);
+            invalidSlots[0] = reader.readRow(-1, ring, 0);
+            invalidSlots[1] = reader.readRow(0, ring, stride);
+            for (int y = 0; y < height; y++) {
+                final int upper = (y % 3) * stride;
+                final int center = ((y + 1) % 3) * stride;
+                final int lower = ((y + 2) % 3) * stride;
+                invalidSlots[(y + 2) % 3] = reader.readRow(y + 1, ring, lower);
+                kernel.computeRow(ring, upper, center, lower, pixelSizesX[y], pixelSizesY[y], 0);
+                if (invalidSlots[0] || invalidSlots[1] || invalidSlots[2]) {
+                    kernel.fillInvalid(ring, upper, center, lower, 0, NO_DATA_VALUE);
+                }
+                writeRow(writer, slopeBand, y, slopeData);
+                writeRow(writer, aspectBand, y, aspectData);
+                writeRow(writer, varianceBand, y, varianceData);
+                pm.worked(1);
+            }
+        } finally {
+            writer.close();
+            targetProduct.dispose();
+            pm.done();
+        }
+    }
+
+    private static void writeRow(ProductWriter writer, Band band, int y, ProductData data) throws IOException {
+        if (band != null) {
+            writer.writeBandRasterData(band, 0, y, data.getNumElems(), 1, data, ProgressMonitor.NULL);
+        }
+    }
+
+    /**
+     * Computes slope, aspect and elevation variance of a product file.
+     * Usage: {@code SlopeStreamingProcessor <source-file> <target-file> [<elevation-band-name> [<format-name>]]}.
+     * The gradient method and the computed bands are given by the system properties 'slope.gradientMethod' (HORN)
+     * and 'slope.outputBands' (slope,aspect,elevation_variance). The bands are always written as floats, with the
+     * variance over 3x3 pixels.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: SlopeStreamingProcessor <source-file> <target-file> " +
+                                       "[<elevation-band-name> [<format-name>]]");
+            System.out.println("System properties: slope.gradientMethod=HORN|ZEVENBERGEN_THORNE|EVANS_YOUNG, " +
+                                       "slope.outputBands=slope,aspect,elevation_variance");
+            System.out.println("Bands are written as floats, the variance is computed over 3x3 pixels.");
+            System.exit(1);
+        }
+        SystemUtils.init3rdPartyLibs(SlopeStreamingProcessor.class.getClassLoader());
+        final String elevationBandName = args.length > 2 ? args[2] : "elevation";
+        final String formatName = args.length > 3 ? args[3] : ProductIO.DEFAULT_FORMAT_NAME;
+        final GradientMethod gradientMethod =
+                GradientMethod.valueOf(System.getProperty("slope.gradientMethod", GradientMethod.HORN.name()));
+        final String[] outputBands =
+                System.getProperty("slope.outputBands", String.join(",", DEFAULT_OUTPUT_BANDS)).split(",");
+
+        final Product sourceProduct = ProductIO.readProduct(args[0]);
+        if (sourceProduct == null) {
+            throw new IOException("No reader found for '" + args[0] + "'");
+        }
+        try {
+            final Band elevationBand = sourceProduct.getBand(elevationBandName);
+            if (elevationBand == null) {
+                throw new IOException("Source product has no band '" + elevationBandName + "'");
+            }
+            new SlopeStreamingProcessor(elevationBand, gradientMethod, outputBands, DEFAULT_STRIP_HEIGHT)
+                    .process(new File(args[1]), formatName, ProgressMonitor.NULL);
+        } finally {
+            sourceProduct.dispose();
+        }
+    }
+
+    /**
+     * The elevations around a raster. Invalid elevations are NaN. Sides given as {@code null} are extended by
+     * copying the edge pixels of the raster.
+     */
+    static final class Halo {
+
+        private final float[] top;
+        private final float[] bottom;
+        private final float[] left;
+        private final float[] right;
+
+        /**
+         * @param top    - the row above the raster including both corners, width + 2 values, may be {@code null}
+         * @param bottom - the row below the raster including both corners, width + 2 values, may be {@code null}
+         * @param left   - the column left of the raster, height values, may be {@code null}
+         * @param right  - the column right of the raster, height values, may be {@code null}
+         */
+        Halo(float[] top, float[] bottom, float[] left, float[] right) {
+            this.top = top;
+            this.bottom = bottom;
+            this.left = left;
+            this.right = right;
+        }
+    }
+
+    /**
+     * Reads elevation rows, a strip of rows at a time, into padded rows with the pixels around the raster taken from
+     * the halo or copied from the edge pixels. Elevations outside the valid mask of the band are replaced by NaN.
+     */
+    private static class StripReader {
+
+        private final Band band;
+        private final int width;
+        private final int height;
+        private final int stripHeight;
+        private float[] strip;
+        private boolean[] validMask;
+        private boolean[] invalidRows;
+        private int stripY;
+        private int stripRows;
+
+        private final float[] haloTop;
+        private final float[] haloBottom;
+        private final float[] haloLeft;
+        private final float[] haloRight;
+
+        private StripReader(Band band, int width, int height, int stripHeight, Halo halo) {
+            this.band = band;
+            this.width = width;
+            this.height = height;
+            this.stripHeight = stripHeight;
+            strip = new float[stripHeight * width];
+            haloTop = halo != null ? halo.top : null;
+            haloBottom = halo != null ? halo.bottom : null;
+            haloLeft = halo != null ? halo.left : null;
+            haloRight = halo != null ? halo.right : null;
+        }
+
+        /**
+         * @param y - the row, from -1 for the row above to height for the row below the raster
+         * @return whether the padded row contains invalid elevations
+         */
+        private boolean readRow(int y, float[] target, int targetOffset) throws IOException {
+            if (y < 0 || y >= height) {
+                final float[] haloRow = y < 0 ? haloTop : haloBottom;
+                if (haloRow == null) {
+                    return readRow(y < 0 ? 0 : height - 1, target, targetOffset);
+                }
+                System.arraycopy(haloRow, 0, target, targetOffset, width + 2);
+                for (float elevation : haloRow) {
+                    if (Float.isNaN(elevation)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            if (y < stripY || y >= stripY + stripRows) {
+                stripY = y;
+                stripRows = Math.min(stripHeight, height - y);
+                if (strip.length != stripRows * width) {
+                    strip = new float[stripRows * width];
+                }
+                band.readPixels(0, stripY, width, stripRows, strip);
+                invalidRows = null;
+                if (band.isValidMaskUsed()) {
+                    readValidMask();
+                }
+            }
+            System.arraycopy(strip, (y - stripY) * width, target, targetOffset + 1, width);
+            target[targetOffset] = haloLeft != null ? haloLeft[y] : target[targetOffset + 1];
+            target[targetOffset + width + 1] = haloRight != null ? haloRight[y] : target[targetOffset + width];
+            return invalidRows != null && invalidRows[y - stripY] ||
+                    Float.isNaN(target[targetOffset]) || Float.isNaN(target[targetOffset + width + 1]);
+        }
+
+        private void readValidMask() throws IOException {
+            if (validMask == null || validMask.length != strip.length) {
+                validMask = new boolean[strip.length];
+            }
+            band.readValidMask(0, stripY, width, stripRows, validMask);
+            for (int i = 0; i < strip.length; i++) {
+                if (!validMask[i]) {
+                    strip[i] = Float.NaN;
+                    if (invalidRows == null) {
+                        invalidRows = new boolean[stripRows];
+                    }
+                    invalidRows[i / width] = true;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,315 @@
+package org.esa.snap.slope;
+
+import org.esa.snap.core.datamodel.ProductData;
+import org.esa.snap.core.gpf.Tile;
+import org.esa.snap.core.util.SystemUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A persistent cache of computed target tiles in a directory, shared by all operators using the same directory.
+ * Entries are addressed by a SHA-256 hash of everything the computed values depend on: the elevations of the source
+ * rectangle including its halo, the metric pixel sizes of the target rows and the operator parameters. Tiles of the
+ * same content therefore hit the cache at any position in any product. The key also covers
+ * {@link #CACHE_VERSION}, so that entries computed by earlier versions of the kernels or encodings are never served.
+ * <p>
+ * Each entry is a file holding the raw samples of the cached tiles, one after the other, in native byte order. Hits
+ * are read through memory mapping. Entries are written to a temporary file and moved into place, so that concurrent
+ * processes never read partial entries. The total size of the entries is bounded, the least recently used entries
+ * are deleted first. Entry access times are kept as file modification times and survive restarts.
+ */
+final class SlopeTileCache {
+
+    /**
+     * The version of the computed values, to be incremented with any change to {@link TerrainKernel},
+     * {@link GradientMethod}, {@link IntegerEncoding} or the layout of the entries.
+     */
+    static final int CACHE_VERSION = 1;
+
+    private static final String ENTRY_EXTENSION = ".tile";
+    private static final Map<File, SlopeTileCache> INSTANCES = new HashMap<>();
+
+    private final File directory;
+    private long maxSize;
+    // entry file names and sizes in access order
+    private final LinkedHashMap<String, Long> entries;
+    private long size;
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    /* package local for testing */
+    SlopeTileCache(File directory, long maxSize) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create tile cache directory '" + directory + "'");
+        }
+        this.directory = directory;
+        this.maxSize = maxSize;
+        entries = new LinkedHashMap<>(16, 0.75f, true);
+        final File[] files = directory.listFiles((dir, name) -> name.endsWith(ENTRY_EXTENSION));
+        if (files != null) {
+            Arrays.sort(files, (f1, f2) -> Long.compare(f1.lastModified(), f2.lastModified()));
+            for (File file : files) {
+                entries.put(file.getName(), file.length());
+                size += file.length();
+            }
+        }
+        evict();
+    }
+
+    /**
+     * @param directory - the cache directory, created if missing
+     * @param maxSize   - the maximum total size of the entries in bytes, a cache already open is enlarged to it
+     * @return the cache of the directory, shared within the JVM
+     * @throws IOException if the directory cannot be created
+     */
+    static SlopeTileCache getInstance(File directory, long maxSize) throws IOException {
+        final File key = directory.getAbsoluteFile();
+        synchronized (INSTANCES) {
+            SlopeTileCache cache = INSTANCES.get(key);
+            if (cache == null) {
+                cache = new SlopeTileCache(key, maxSize);
+                INSTANCES.put(key, cache);
+            } else {
+                cache.ensureMaxSize(maxSize);
+            }
+            return cache;
+        }
+    }
+
+    private synchronized void ensureMaxSize(long maxSize) {
+        if (maxSize > this.maxSize) {
+            SystemUtils.LOG.info("Tile cache '" + directory + "' enlarged from " + this.maxSize + " to " + maxSize +
+                                         " bytes");
+            this.maxSize = maxSize;
+        }
+    }
+
+    /**
+     * Computes the key of a tile.
+     *
+     * @param parameters  - a canonical description of the operator parameters and the cached bands
+     * @param elevations  - the elevations of the source rectangle, invalid ones as NaN
+     * @param offset      - index of the first elevation
+     * @param stride      - the scanline stride of the elevations
+     * @param width       - the width of the source rectangle
+     * @param height      - the height of the source rectangle
+     * @param pixelSizesX - the pixel sizes in x direction, one per scene row
+     * @param pixelSizesY - the pixel sizes in y direction, one per scene row
+     * @param y           - the first scene row of the target rectangle
+     * @param rows        - the number of target rows
+     * @return the hexadecimal SHA-256 hash
+     */
+    static String computeKey(String parameters, float[] elevations, int offset, int stride, int width, int height,
+                             double[] pixelSizesX, double[] pixelSizesY, int y, int rows) {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        digest.update(parameters.getBytes(StandardCharsets.UTF_8));
+        final ByteBuffer buffer = ByteBuffer.allocate(4 * Math.max(width, 4 * rows) + 12);
+        buffer.putInt(CACHE_VERSION).putInt(width).putInt(height);
+        digest.update(buffer.array(), 0, buffer.position());
+        for (int j = 0; j < height; j++) {
+            buffer.clear();
+            for (int i = 0; i < width; i++) {
+                buffer.putFloat(elevations[offset + j * stride + i]);
+            }
+            digest.update(buffer.array(), 0, buffer.position());
+        }
+        buffer.clear();
+        for (int j = y; j < y + rows; j++) {
+            buffer.putDouble(pixelSizesX[j]).putDouble(pixelSizesY[j]);
+        }
+        digest.update(buffer.array(), 0, buffer.position());
+
+        final StringBuilder key = new StringBuilder(64);
+        for (byte b : digest.digest()) {
+            key.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return key.toString();
+    }
+
+    /**
+     * @param key  - the key of the entry
+     * @param size - the expected size of the entry in bytes
+     * @return the memory-mapped entry in native byte order, or {@code null} if there is no entry of this size
+     */
+    ByteBuffer get(String key, long size) {
+        final String name = key + ENTRY_EXTENSION;
+        final Long entrySize;
+        synchronized (this) {
+            entrySize = entries.get(name);
+        }
+        if (entrySize == null || entrySize != size) {
+            missCount.incrementAndGet();
+            return null;
+        }
+        final File file = new File(directory, name);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            // the access time is kept as modification time, the file itself is never modified
+            if (!file.setLastModified(System.currentTimeMillis())) {
+                SystemUtils.LOG.fine("Unable to update access time of tile cache entry " + name);
+            }
+            hitCount.incrementAndGet();
+            return buffer.order(ByteOrder.nativeOrder());
+        } catch (IOException e) {
+            // e.g. deleted by another process, the tile is recomputed
+            synchronized (this) {
+                remove(name);
+            }
+            missCount.incrementAndGet();
+            return null;
+        }
+    }
+
+    /**
+     * Adds an entry, evicting the least recently used entries if the cache exceeds its size. Failures to write are
+     * logged and otherwise ignored.
+     *
+     * @param key  - the key of the entry
+     * @param data - the entry, from its position to its limit
+     */
+    void put(String key, ByteBuffer data) {
+        final String name = key + ENTRY_EXTENSION;
+        final long entrySize = data.remaining();
+        synchronized (this) {
+            if (entrySize > maxSize || entries.containsKey(name)) {
+                return;
+            }
+        }
+        final Path target = new File(directory, name).toPath();
+        try {
+            final Path temp = Files.createTempFile(directory.toPath(), key, ".tmp");
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                while (data.hasRemaining()) {
+                    channel.write(data);
+                }
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            SystemUtils.LOG.warning("Unable to write tile cache entry " + name + ": " + e.getMessage());
+            return;
+        }
+        synchronized (this) {
+            if (entries.put(name, entrySize) == null) {
+                size += entrySize;
+            }
+            evict();
+        }
+    }
+
+    long getHitCount() {
+        return hitCount.get();
+    }
+
+    long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * @return the total size of the entries in bytes
+     */
+    synchronized long getSize() {
+        return size;
+    }
+
+    private void evict() {
+        final Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        while (size > maxSize && iterator.hasNext()) {
+            final Map.Entry<String, Long> entry = iterator.next();
+            iterator.remove();
+            size -= entry.getValue();
+            deleteEntry(entry.getKey());
+        }
+    }
+
+    private void remove(String name) {
+        final Long entrySize = entries.remove(name);
+        if (entrySize != null) {
+            size -= entrySize;
+        }
+    }
+
+    private void deleteEntry(String name) {
+        try {
+            Files.deleteIfExists(new File(directory, name).toPath());
+        } catch (IOException e) {
+            SystemUtils.LOG.warning("Unable to delete tile cache entry " + name + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return the number of bytes of the samples of a tile
+     */
+    static int getSize(Tile tile, int dataType) {
+        return tile.getWidth() * tile.getHeight() * ProductData.getElemSize(dataType);
+    }
+
+    /**
+     * Copies the samples of a tile of float, unsigned short or unsigned byte data type into a buffer.
+     */
+    static void write(Tile tile, int dataType, ByteBuffer buffer) {
+        final int offset = tile.getScanlineOffset();
+        final int stride = tile.getScanlineStride();
+        final int width = tile.getWidth();
+        for (int y = 0; y < tile.getHeight(); y++) {
+            final int index = offset + y * stride;
+            if (dataType == ProductData.TYPE_FLOAT32) {
+                buffer.asFloatBuffer().put(tile.getDataBufferFloat(), index, width);
+                buffer.position(buffer.position() + 4 * width);
+            } else if (dataType == ProductData.TYPE_UINT16) {
+                buffer.asShortBuffer().put(tile.getDataBufferShort(), index, width);
+                buffer.position(buffer.position() + 2 * width);
+            } else {
+                buffer.put(tile.getDataBufferByte(), index, width);
+            }
+        }
+    }
+
+    /**
+     * Copies the samples of a tile of float, unsigned short or unsigned byte data type from a buffer.
+     */
+    static void read(ByteBuffer buffer, Tile tile, int dataType) {
+        final int offset = tile.getScanlineOffset();
+        final int stride = tile.getScanlineStride();
+        final int width = tile.getWidth();
+        for (int y = 0; y < tile.getHeight(); y++) {
+            final int index = offset + y * stride;
+            if (dataType == ProductData.TYPE_FLOAT32) {
+                buffer.asFloatBuffer().get(tile.getDataBufferFloat(), index, width);
+                buffer.position(buffer.position() + 4 * width);
+            } else if (dataType == ProductData.TYPE_UINT16) {
+                buffer.asShortBuffer().get(tile.getDataBufferShort(), index, width);
+                buffer.position(buffer.position() + 2 * width);
+            } else {
+                buffer.get(tile.getDataBufferByte(), index, width);
+            }
+        }
+    }
+}
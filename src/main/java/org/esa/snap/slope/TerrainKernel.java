@@ -0,0 +1,416 @@
+package org.esa.snap.slope;
+
+import org.esa.snap.core.util.math.MathUtils;
+
+/**
+ * Computes slope and aspect (both in degrees) and the 3x3 elevation variance for rows of pixels. Optionally, hillshade,
+ * profile and plan curvature, terrain ruggedness index and topographic position index are computed from the same
+ * 3x3 window. The elevation differences of a row are computed first by the loop of the {@link GradientMethod}, then
+ * the outputs are derived in a loop per group of outputs. No memory is allocated per pixel. Target arrays given as
+ * {@code null} are skipped, including the math needed for them only.
+ * <p>
+ * Invalid elevations are expected as NaN. Pixels whose window contains one are set to a no-data value by
+ * {@link #fillInvalid}, which callers only need to invoke for rows with invalid elevations.
+ * <p>
+ * If enabled and supported by the JVM, the gradient, slope, aspect and variance loops are done by a
+ * {@link VectorKernel}.
+ * <p>
+ * A kernel keeps scratch arrays for one row and must not be shared between threads.
+ */
+final class TerrainKernel {
+
+    private final GradientMethod gradientMethod;
+    private final int width;
+    private final float[] slope;
+    private final float[] aspect;
+    private final float[] variance;
+    private final double[] b;
+    private final double[] c;
+    private final VectorKernel vectorKernel;
+
+    private float[] hillshade;
+    private double sunX;
+    private double sunY;
+    private double sunZ;
+    private float[] profileCurvature;
+    private float[] planCurvature;
+    private float[] ruggedness;
+    private float[] topographicPosition;
+
+    /**
+     * @param gradientMethod - the gradient method
+     * @param width          - the number of pixels per row
+     * @param slope          - the slope target data, may be {@code null}
+     * @param aspect         - the aspect target data, may be {@code null}
+     * @param variance       - the variance target data, may be {@code null}
+     */
+    TerrainKernel(GradientMethod gradientMethod, int width, float[] slope, float[] aspect, float[] variance) {
+        this(gradientMethod, width, slope, aspect, variance, VectorKernel.create());
+    }
+
+    /**
+     * @param gradientMethod - the gradient method
+     * @param width          - the number of pixels per row
+     * @param slope          - the slope target data, may be {@code null}
+     * @param aspect         - the aspect target data, may be {@code null}
+     * @param variance       - the variance target data, may be {@code null}
+     * @param vectorKernel   - the vector kernel, {@code null} for the scalar loops
+     */
+    TerrainKernel(GradientMethod gradientMethod, int width, float[] slope, float[] aspect, float[] variance,
+                  VectorKernel vectorKernel) {
+        this.gradientMethod = gradientMethod;
+        this.width = width;
+        this.slope = slope;
+        this.aspect = aspect;
+        this.variance = variance;
+        this.vectorKernel = vectorKernel;
+        b = new double[width];
+        c = new double[width];
+    }
+
+    /**
+     * Enables the hillshade output, the cosine of the angle between surface normal and sun direction, clipped to
+     * [0..1].
+     *
+     * @param hillshade    - the hillshade target data, may be {@code null}
+     * @param sunAzimuth   - the sun azimuth in degrees, clockwise from North
+     * @param sunElevation - the sun elevation above the horizon in degrees
+     */
+    void setHillshade(float[] hillshade, double sunAzimuth, double sunElevation) {
+        this.hillshade = hillshade;
+        final double azimuthRad = sunAzimuth * MathUtils.DTOR;
+        final double elevationRad = sunElevation * MathUtils.DTOR;
+        // unit vector towards the sun in (East, North, up) coordinates
+        sunX = Math.cos(elevationRad) * Math.sin(azimuthRad);
+        sunY = Math.cos(elevationRad) * Math.cos(azimuthRad);
+        sunZ = Math.sin(elevationRad);
+    }
+
+    /**
+     * Enables the curvature outputs in 1/m. Both are positive for convex and negative for concave surfaces, and
+     * undefined where the slope is zero.
+     *
+     * @param profileCurvature - the curvature in the direction of the steepest slope, may be {@code null}
+     * @param planCurvature    - the curvature of the contour line, may be {@code null}
+     */
+    void setCurvatures(float[] profileCurvature, float[] planCurvature) {
+        this.profileCurvature = profileCurvature;
+        this.planCurvature = planCurvature;
+    }
+
+    /**
+     * Enables the ruggedness outputs in metres.
+     *
+     * @param ruggedness          - the terrain ruggedness index (Riley et al., 1999), the root of the summed squared
+     *                            elevation differences to the eight neighbours, may be {@code null}
+     * @param topographicPosition - the topographic position index (Weiss, 2001), the elevation difference to the
+     *                            mean of the eight neighbours, may be {@code null}
+     */
+    void setRuggedness(float[] ruggedness, float[] topographicPosition) {
+        this.ruggedness = ruggedness;
+        this.topographicPosition = topographicPosition;
+    }
+
+    /**
+     * Computes a row of pixels. The 3x3 window is given by the offsets of the pixel left of the first target pixel
+     * in the three elevation rows. With the {@link GradientMethod#HORN} method, equal pixel sizes and the scalar
+     * loops, results are identical to those of a per-pixel computation with the textbook Horn formula.
+     *
+     * @param elev        - the elevation data
+     * @param upper       - offset of the upper left window pixel of the first target pixel
+     * @param center      - offset of the center left window pixel of the first target pixel
+     * @param lower       - offset of the lower left window pixel of the first target pixel
+     * @param pixelSizeX  - the pixel size in x direction in metres
+     * @param pixelSizeY  - the pixel size in y direction in metres
+     * @param targetIndex - index of the first target pixel in the target data
+     */
+    void computeRow(float[] elev, int upper, int center, int lower, double pixelSizeX, double pixelSizeY,
+                    int targetIndex) {
+        final boolean needsCurvatures = profileCurvature != null || planCurvature != null;
+        if (slope != null || aspect != null || hillshade != null || needsCurvatures) {
+            if (vectorKernel != null) {
+                vectorKernel.computeGradients(gradientMethod, elev, upper, center, lower, width, b, c);
+            } else {
+                gradientMethod.computeGradients(elev, upper, center, lower, width, b, c);
+            }
+        }
+        if (slope != null || aspect != null) {
+            if (vectorKernel != null) {
+                vectorKernel.computeSlopeAspect(b, c, width, pixelSizeX, pixelSizeY, slope, aspect, targetIndex);
+            } else {
+                computeSlopeAspect(pixelSizeX, pixelSizeY, targetIndex);
+            }
+        }
+        if (hillshade != null) {
+            computeHillshade(pixelSizeX, pixelSizeY, targetIndex);
+        }
+        if (needsCurvatures) {
+            computeCurvatures(elev, upper, center, lower, pixelSizeX, pixelSizeY, targetIndex);
+        }
+        if (ruggedness != null || topographicPosition != null) {
+            computeRuggedness(elev, upper, center, lower, targetIndex);
+        }
+        if (variance != null) {
+            if (vectorKernel != null) {
+                vectorKernel.computeVariance(elev, upper, center, lower, width, variance, targetIndex);
+            } else {
+                computeVariance(elev, upper, center, lower, targetIndex);
+            }
+        }
+    }
+
+    /**
+     * Sets all outputs of a row of pixels to the no-data value where the 3x3 window contains a NaN elevation. To be
+     * called after {@link #computeRow} with the same offsets.
+     *
+     * @param elev        - the elevation data, invalid elevations are NaN
+     * @param upper       - offset of the upper left window pixel of the first target pixel
+     * @param center      - offset of the center left window pixel of the first target pixel
+     * @param lower       - offset of the lower left window pixel of the first target pixel
+     * @param targetIndex - index of the first target pixel in the target data
+     * @param noDataValue - the no-data value
+     */
+    void fillInvalid(float[] elev, int upper, int center, int lower, int targetIndex, float noDataValue) {
+        boolean left = isInvalidColumn(elev, upper, center, lower);
+        boolean middle = isInvalidColumn(elev, upper + 1, center + 1, lower + 1);
+        for (int i = 0; i < width; i++) {
+            final boolean right = isInvalidColumn(elev, upper + i + 2, center + i + 2, lower + i + 2);
+            if (left || middle || right) {
+                fill(targetIndex + i, noDataValue);
+            }
+            left = middle;
+            middle = right;
+        }
+    }
+
+    private static boolean isInvalidColumn(float[] elev, int upper, int center, int lower) {
+        return Float.isNaN(elev[upper]) || Float.isNaN(elev[center]) || Float.isNaN(elev[lower]);
+    }
+
+    private void fill(int index, float value) {
+        fill(slope, index, value);
+        fill(aspect, index, value);
+        fill(variance, index, value);
+        fill(hillshade, index, value);
+        fill(profileCurvature, index, value);
+        fill(planCurvature, index, value);
+        fill(ruggedness, index, value);
+        fill(topographicPosition, index, value);
+    }
+
+    private static void fill(float[] data, int index, float value) {
+        if (data != null) {
+            data[index] = value;
+        }
+    }
+
+    private void computeSlopeAspect(double pixelSizeX, double pixelSizeY, int targetIndex) {
+        // scales the x gradient so that the aspect follows the metric gradient, exactly 1 for square pixels
+        final double aspectScale = pixelSizeY / pixelSizeX;
+        for (int i = 0; i < width; i++) {
+            final float slopeRad = (float) Math.atan(Math.sqrt(Math.pow(b[i] / pixelSizeX, 2) +
+                                                                       Math.pow(c[i] / pixelSizeY, 2)));
+            final int t = targetIndex + i;
+            if (slope != null) {
+                slope[t] = (float) (slopeRad * MathUtils.RTOD);
+            }
+            if (aspect != null) {
+                float aspectRad = (float) Math.atan2(-b[i] * aspectScale, -c[i]);
+                if (aspectRad < 0.0f) {
+                    aspectRad += 2.0 * Math.PI;
+                }
+                if (slopeRad <= 0.0) {
+                    aspectRad = Float.NaN;
+                }
+                aspect[t] = (float) (aspectRad * MathUtils.RTOD);
+            }
+        }
+    }
+
+    private void computeHillshade(double pixelSizeX, double pixelSizeY, int targetIndex) {
+        for (int i = 0; i < width; i++) {
+            final double p = b[i] / pixelSizeX;
+            final double q = c[i] / pixelSizeY;
+            // the surface normal is (-p, -q, 1) / sqrt(1 + p^2 + q^2)
+            final double illumination = (sunZ - p * sunX - q * sunY) / Math.sqrt(1.0 + p * p + q * q);
+            hillshade[targetIndex + i] = (float) Math.max(0.0, illumination);
+        }
+    }
+
+    private void computeCurvatures(float[] elev, int upper, int center, int lower,
+                                   double pixelSizeX, double pixelSizeY, int targetIndex) {
+        // second derivatives after Zevenbergen and Thorne (1987), first derivatives from the gradient method
+        final double xx = pixelSizeX * pixelSizeX;
+        final double yy = pixelSizeY * pixelSizeY;
+        final double xy = 4.0 * pixelSizeX * pixelSizeY;
+        for (int i = 0; i < width; i++) {
+            final double z0 = elev[upper + i];
+            final double z1 = elev[upper + i + 1];
+            final double z2 = elev[upper + i + 2];
+            final double z3 = elev[center + i];
+            final double z4 = elev[center + i + 1];
+            final double z5 = elev[center + i + 2];
+            final double z6 = elev[lower + i];
+            final double z7 = elev[lower + i + 1];
+            final double z8 = elev[lower + i + 2];
+            final double p = b[i] / pixelSizeX;
+            final double q = c[i] / pixelSizeY;
+            final double r = (z3 - 2.0 * z4 + z5) / xx;
+            final double t = (z1 - 2.0 * z4 + z7) / yy;
+            final double s = (z2 + z6 - z0 - z8) / xy;
+            final double pp = p * p;
+            final double qq = q * q;
+            final double pq = p * q;
+            final double gradientSquare = pp + qq;
+            final int index = targetIndex + i;
+            if (profileCurvature != null) {
+                profileCurvature[index] = gradientSquare > 0.0 ?
+                        (float) (-(pp * r + 2.0 * pq * s + qq * t) /
+                                (gradientSquare * Math.pow(1.0 + gradientSquare, 1.5))) : Float.NaN;
+            }
+            if (planCurvature != null) {
+                planCurvature[index] = gradientSquare > 0.0 ?
+                        (float) (-(qq * r - 2.0 * pq * s + pp * t) / Math.pow(gradientSquare, 1.5)) : Float.NaN;
+            }
+        }
+    }
+
+    private void computeRuggedness(float[] elev, int upper, int center, int lower, int targetIndex) {
+        for (int i = 0; i < width; i++) {
+            final double z4 = elev[center + i + 1];
+            final double d0 = elev[upper + i] - z4;
+            final double d1 = elev[upper + i + 1] - z4;
+            final double d2 = elev[upper + i + 2] - z4;
+            final double d3 = elev[center + i] - z4;
+            final double d5 = elev[center + i + 2] - z4;
+            final double d6 = elev[lower + i] - z4;
+            final double d7 = elev[lower + i + 1] - z4;
+            final double d8 = elev[lower + i + 2] - z4;
+            final int index = targetIndex + i;
+            if (ruggedness != null) {
+                ruggedness[index] = (float) Math.sqrt(d0 * d0 + d1 * d1 + d2 * d2 + d3 * d3 +
+                                                              d5 * d5 + d6 * d6 + d7 * d7 + d8 * d8);
+            }
+            if (topographicPosition != null) {
+                topographicPosition[index] = (float) (-(d0 + d1 + d2 + d3 + d5 + d6 + d7 + d8) / 8.0);
+            }
+        }
+    }
+
+    private void computeVariance(float[] elev, int upper, int center, int lower, int targetIndex) {
+        double z0 = elev[upper];
+        double z1 = elev[upper + 1];
+        double z3 = elev[center];
+        double z4 = elev[center + 1];
+        double z6 = elev[lower];
+        double z7 = elev[lower + 1];
+        for (int i = 0; i < width; i++) {
+            final double z2 = elev[upper + i + 2];
+            final double z5 = elev[center + i + 2];
+            final double z8 = elev[lower + i + 2];
+            variance[targetIndex + i] = (float) computeVariance(z0, z1, z2, z3, z4, z5, z6, z7, z8);
+            z0 = z1;
+            z1 = z2;
+            z3 = z4;
+            z4 = z5;
+            z6 = z7;
+            z7 = z8;
+        }
+    }
+
+    /**
+     * Computes the bias-corrected variance of nine values in the same order of operations as
+     * {@code StatUtils.variance(double[])} of Commons Math, so that both give identical results.
+     */
+    static double computeVariance(double z0, double z1, double z2, double z3, double z4,
+                                  double z5, double z6, double z7, double z8) {
+        final double xBar = (z0 + z1 + z2 + z3 + z4 + z5 + z6 + z7 + z8) / 9.0;
+        final double correction = (z0 - xBar) + (z1 - xBar) + (z2 - xBar) + (z3 - xBar) + (z4 - xBar) +
+                (z5 - xBar) + (z6 - xBar) + (z7 - xBar) + (z8 - xBar);
+        final double mean = xBar + correction / 9.0;
+        final double d0 = z0 - mean;
+        final double d1 = z1 - mean;
+        final double d2 = z2 - mean;
+        final double d3 = z3 - mean;
+        final double d4 = z4 - mean;
+        final double d5 = z5 - mean;
+        final double d6 = z6 - mean;
+        final double d7 = z7 - mean;
+        final double d8 = z8 - mean;
+        final double accum = d0 * d0 + d1 * d1 + d2 * d2 + d3 * d3 + d4 * d4 + d5 * d5 + d6 * d6 + d7 * d7 + d8 * d8;
+        final double accum2 = d0 + d1 + d2 + d3 + d4 + d5 + d6 + d7 + d8;
+        return (accum - (accum2 * accum2 / 9.0)) / 8.0;
+    }
+
+    /**
+     * Computes the bias-corrected elevation variance over a square window for all pixels of a tile. The window sums
+     * of z and z^2 are taken from summed-area tables of the tile, so that the cost per pixel does not depend on the
+     * window size. Elevations are taken relative to the first elevation of the tile to limit cancellation.
+     *
+     * @param elev         - the elevation data, including a halo of half the window size
+     * @param offset       - offset of the first elevation
+     * @param stride       - the elevation scanline stride
+     * @param width        - the width of the elevation rectangle
+     * @param height       - the height of the elevation rectangle
+     * @param windowSize   - the odd window size
+     * @param variance     - the variance target data
+     * @param targetOffset - offset of the first target pixel in the target data
+     * @param targetStride - the target scanline stride
+     * @param noDataValue  - the value for pixels whose window contains a NaN elevation
+     */
+    static void computeWindowVariance(float[] elev, int offset, int stride, int width, int height, int windowSize,
+                                      float[] variance, int targetOffset, int targetStride, float noDataValue) {
+        // the tables have a leading row and column of zeros, NaN elevations are counted instead of summed
+        final int tableStride = width + 1;
+        final double[] sums = new double[tableStride * (height + 1)];
+        final double[] squareSums = new double[tableStride * (height + 1)];
+        int[] invalidCounts = null;
+        final double reference = Float.isNaN(elev[offset]) ? 0.0 : elev[offset];
+        for (int y = 0; y < height; y++) {
+            double rowSum = 0.0;
+            double rowSquareSum = 0.0;
+            int rowInvalidCount = 0;
+            final int elevIndex = offset + y * stride;
+            final int tableIndex = (y + 1) * tableStride + 1;
+            for (int x = 0; x < width; x++) {
+                final float z = elev[elevIndex + x];
+                if (Float.isNaN(z)) {
+                    if (invalidCounts == null) {
+                        invalidCounts = new int[tableStride * (height + 1)];
+                    }
+                    rowInvalidCount++;
+                } else {
+                    final double d = z - reference;
+                    rowSum += d;
+                    rowSquareSum += d * d;
+                }
+                sums[tableIndex + x] = sums[tableIndex + x - tableStride] + rowSum;
+                squareSums[tableIndex + x] = squareSums[tableIndex + x - tableStride] + rowSquareSum;
+                if (invalidCounts != null) {
+                    invalidCounts[tableIndex + x] = invalidCounts[tableIndex + x - tableStride] + rowInvalidCount;
+                }
+            }
+        }
+
+        final double n = windowSize * windowSize;
+        final int targetWidth = width - windowSize + 1;
+        final int targetHeight = height - windowSize + 1;
+        final int windowOffset = windowSize * tableStride;
+        for (int y = 0; y < targetHeight; y++) {
+            final int upper = y * tableStride;
+            final int lower = upper + windowOffset;
+            final int targetIndex = targetOffset + y * targetStride;
+            for (int x = 0; x < targetWidth; x++) {
+                final double sum = sums[lower + x + windowSize] - sums[lower + x] -
+                        sums[upper + x + windowSize] + sums[upper + x];
+                final double squareSum = squareSums[lower + x + windowSize] - squareSums[lower + x] -
+                        squareSums[upper + x + windowSize] + squareSums[upper + x];
+                variance[targetIndex + x] = (float) Math.max(0.0, (squareSum - sum * sum / n) / (n - 1.0));
+                if (invalidCounts != null && invalidCounts[lower + x + windowSize] - invalidCounts[lower + x] -
+                        invalidCounts[upper + x + windowSize] + invalidCounts[upper + x] > 0) {
+                    variance[targetIndex + x] = noDataValue;
+                }
+            }
+        }
+    }
+}
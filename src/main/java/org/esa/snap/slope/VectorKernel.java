@@ -0,0 +1,109 @@
+package org.esa.snap.slope;
+
+import java.lang.reflect.Constructor;
+
+/**
+ * The row loops of {@link TerrainKernel} which have a SIMD implementation based on the Java Vector API. The
+ * implementation is compiled for Java 17 only and shipped in the versioned part of the multi-release jar, so it is
+ * loaded by name and only if the {@code jdk.incubator.vector} module is present, i.e. the JVM is started with
+ * {@code --add-modules jdk.incubator.vector}. Otherwise the scalar loops are used.
+ * <p>
+ * Gradients and variance are computed in the same order of operations as the scalar loops and are identical to their
+ * results. Slope and aspect use a polynomial approximation of atan (Abramowitz and Stegun, 1964, 4.4.49) with an
+ * absolute error below 2e-8 radians, i.e. 1.2e-6 degrees, before rounding to float.
+ * <p>
+ * A vector kernel may keep scratch data and must not be shared between threads.
+ */
+interface VectorKernel {
+
+    /**
+     * The system property enabling the vector kernel, {@code false} by default.
+     */
+    String ENABLED_PROPERTY = "slope.vectorKernel";
+
+    String IMPLEMENTATION_CLASS_NAME = "org.esa.snap.slope.VectorApiKernel";
+
+    /**
+     * Computes the elevation differences per pixel in x and y direction for a row of pixels, see
+     * {@link GradientMethod#computeGradients}.
+     */
+    void computeGradients(GradientMethod gradientMethod, float[] elev, int upper, int center, int lower, int width,
+                          double[] b, double[] c);
+
+    /**
+     * Computes slope and aspect in degrees for a row of pixels from the elevation differences. The aspect is NaN
+     * where the slope is zero.
+     *
+     * @param b           - the elevation differences towards East
+     * @param c           - the elevation differences towards North
+     * @param width       - the number of pixels
+     * @param pixelSizeX  - the pixel size in x direction in metres
+     * @param pixelSizeY  - the pixel size in y direction in metres
+     * @param slope       - the slope target data, may be {@code null}
+     * @param aspect      - the aspect target data, may be {@code null}
+     * @param targetIndex - index of the first target pixel in the target data
+     */
+    void computeSlopeAspect(double[] b, double[] c, int width, double pixelSizeX, double pixelSizeY,
+                            float[] slope, float[] aspect, int targetIndex);
+
+    /**
+     * Computes the bias-corrected 3x3 elevation variance for a row of pixels, see
+     * {@link TerrainKernel#computeVariance(double, double, double, double, double, double, double, double, double)}.
+     */
+    void computeVariance(float[] elev, int upper, int center, int lower, int width, float[] variance,
+                         int targetIndex);
+
+    /**
+     * @return a new vector kernel if enabled by the {@link #ENABLED_PROPERTY} system property and supported by the
+     * JVM, {@code null} otherwise
+     */
+    static VectorKernel create() {
+        return isEnabled() ? createIfSupported() : null;
+    }
+
+    /**
+     * @return {@code true} if the vector kernel is enabled by the {@link #ENABLED_PROPERTY} system property and
+     * supported by the JVM
+     */
+    static boolean isEnabled() {
+        return Boolean.getBoolean(ENABLED_PROPERTY) && Implementation.CONSTRUCTOR != null;
+    }
+
+    /**
+     * @return a new vector kernel if supported by the JVM, {@code null} otherwise
+     */
+    static VectorKernel createIfSupported() {
+        final Constructor<?> constructor = Implementation.CONSTRUCTOR;
+        if (constructor == null) {
+            return null;
+        }
+        try {
+            return (VectorKernel) constructor.newInstance();
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Looks up the implementation once. Before Java 17 the class is not visible in the multi-release jar, without
+     * the incubator module it cannot be linked.
+     */
+    final class Implementation {
+
+        private static final Constructor<?> CONSTRUCTOR = findConstructor();
+
+        private Implementation() {
+        }
+
+        private static Constructor<?> findConstructor() {
+            try {
+                final Constructor<?> constructor = Class.forName(IMPLEMENTATION_CLASS_NAME).getDeclaredConstructor();
+                // fails early if the vector species cannot be initialised on this platform
+                constructor.newInstance();
+                return constructor;
+            } catch (ReflectiveOperationException | LinkageError e) {
+                return null;
+            }
+        }
+    }
+}
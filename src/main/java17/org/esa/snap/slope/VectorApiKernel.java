@@ -0,0 +1,239 @@
+package org.esa.snap.slope;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+import org.esa.snap.core.util.math.MathUtils;
+
+/**
+ * The {@link VectorKernel} based on the Java Vector API. A row is processed in segments of the preferred number of
+ * double lanes, e.g. four with AVX2 and eight with AVX-512, and a masked segment for the remaining pixels. Elevations
+ * are loaded as float vectors of half the size and widened, so that all math is done in double precision like in the
+ * scalar loops.
+ * <p>
+ * atan is approximated on [0..1] by the polynomial of Abramowitz and Stegun (1964), 4.4.49, with
+ * |atan(x) - x p(x^2)| &lt;= 2e-8, and extended by atan(x) = pi/2 - atan(1/x) for x &gt; 1. atan2 is reduced to it by
+ * dividing the smaller by the larger absolute coordinate and reflecting the result into the quadrant, which keeps the
+ * bound. Both need no branches and no lookup tables.
+ */
+final class VectorApiKernel implements VectorKernel {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Float> FLOAT_SPECIES =
+            VectorSpecies.of(float.class, VectorShape.forBitSize(SPECIES.vectorBitSize() / 2));
+
+    private static final double A2 = -0.3333314528;
+    private static final double A4 = 0.1999355085;
+    private static final double A6 = -0.1420889944;
+    private static final double A8 = 0.1065626393;
+    private static final double A10 = -0.0752896400;
+    private static final double A12 = 0.0429096138;
+    private static final double A14 = -0.0161657367;
+    private static final double A16 = 0.0028662257;
+
+    private static final double HALF_PI = 0.5 * Math.PI;
+    private static final double TWO_PI = 2.0 * Math.PI;
+
+    VectorApiKernel() {
+    }
+
+    @Override
+    public void computeGradients(GradientMethod gradientMethod, float[] elev, int upper, int center, int lower,
+                                 int width, double[] b, double[] c) {
+        final int bound = SPECIES.loopBound(width);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            computeGradients(gradientMethod, elev, upper + i, center + i, lower + i, b, c, i, null);
+        }
+        if (i < width) {
+            computeGradients(gradientMethod, elev, upper + i, center + i, lower + i, b, c, i,
+                             SPECIES.indexInRange(i, width));
+        }
+    }
+
+    @Override
+    public void computeSlopeAspect(double[] b, double[] c, int width, double pixelSizeX, double pixelSizeY,
+                                   float[] slope, float[] aspect, int targetIndex) {
+        final int bound = SPECIES.loopBound(width);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            computeSlopeAspect(b, c, i, pixelSizeX, pixelSizeY, slope, aspect, targetIndex + i, null);
+        }
+        if (i < width) {
+            computeSlopeAspect(b, c, i, pixelSizeX, pixelSizeY, slope, aspect, targetIndex + i,
+                               SPECIES.indexInRange(i, width));
+        }
+    }
+
+    @Override
+    public void computeVariance(float[] elev, int upper, int center, int lower, int width, float[] variance,
+                                int targetIndex) {
+        final int bound = SPECIES.loopBound(width);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            computeVariance(elev, upper + i, center + i, lower + i, variance, targetIndex + i, null);
+        }
+        if (i < width) {
+            computeVariance(elev, upper + i, center + i, lower + i, variance, targetIndex + i,
+                            SPECIES.indexInRange(i, width));
+        }
+    }
+
+    private static void computeGradients(GradientMethod gradientMethod, float[] elev, int upper, int center,
+                                         int lower, double[] b, double[] c, int index, VectorMask<Double> m) {
+        // the expressions follow the scalar loops of the gradient methods term by term
+        final DoubleVector bv;
+        final DoubleVector cv;
+        switch (gradientMethod) {
+            case HORN: {
+                final DoubleVector z0 = load(elev, upper, m);
+                final DoubleVector z1 = load(elev, upper + 1, m);
+                final DoubleVector z2 = load(elev, upper + 2, m);
+                final DoubleVector z3 = load(elev, center, m);
+                final DoubleVector z5 = load(elev, center + 2, m);
+                final DoubleVector z6 = load(elev, lower, m);
+                final DoubleVector z7 = load(elev, lower + 1, m);
+                final DoubleVector z8 = load(elev, lower + 2, m);
+                bv = z2.add(z5.mul(2.0)).add(z8).sub(z0).sub(z3.mul(2.0)).sub(z6).div(8.0);
+                cv = z0.add(z1.mul(2.0)).add(z2).sub(z6).sub(z7.mul(2.0)).sub(z8).div(8.0);
+                break;
+            }
+            case ZEVENBERGEN_THORNE: {
+                bv = load(elev, center + 2, m).sub(load(elev, center, m)).div(2.0);
+                cv = load(elev, upper + 1, m).sub(load(elev, lower + 1, m)).div(2.0);
+                break;
+            }
+            case EVANS_YOUNG: {
+                final DoubleVector z0 = load(elev, upper, m);
+                final DoubleVector z1 = load(elev, upper + 1, m);
+                final DoubleVector z2 = load(elev, upper + 2, m);
+                final DoubleVector z6 = load(elev, lower, m);
+                final DoubleVector z7 = load(elev, lower + 1, m);
+                final DoubleVector z8 = load(elev, lower + 2, m);
+                final DoubleVector left = z0.add(load(elev, center, m)).add(z6);
+                final DoubleVector right = z2.add(load(elev, center + 2, m)).add(z8);
+                bv = right.sub(left).div(6.0);
+                cv = z0.add(z1).add(z2).sub(z6).sub(z7).sub(z8).div(6.0);
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("Unsupported gradient method " + gradientMethod);
+        }
+        store(bv, b, index, m);
+        store(cv, c, index, m);
+    }
+
+    private static void computeSlopeAspect(double[] b, double[] c, int index, double pixelSizeX, double pixelSizeY,
+                                           float[] slope, float[] aspect, int targetIndex, VectorMask<Double> m) {
+        final DoubleVector bv = m == null ? DoubleVector.fromArray(SPECIES, b, index) :
+                DoubleVector.fromArray(SPECIES, b, index, m);
+        final DoubleVector cv = m == null ? DoubleVector.fromArray(SPECIES, c, index) :
+                DoubleVector.fromArray(SPECIES, c, index, m);
+        final DoubleVector p = bv.div(pixelSizeX);
+        final DoubleVector q = cv.div(pixelSizeY);
+        final DoubleVector slopeRad = atan(p.mul(p).add(q.mul(q)).sqrt());
+        if (slope != null) {
+            store(slopeRad.mul(MathUtils.RTOD), slope, targetIndex, m);
+        }
+        if (aspect != null) {
+            // scales the x gradient so that the aspect follows the metric gradient, exactly 1 for square pixels
+            final double aspectScale = pixelSizeY / pixelSizeX;
+            DoubleVector aspectRad = atan2(bv.neg().mul(aspectScale), cv.neg());
+            aspectRad = aspectRad.add(TWO_PI, aspectRad.compare(VectorOperators.LT, 0.0));
+            aspectRad = aspectRad.blend(Double.NaN, slopeRad.compare(VectorOperators.LE, 0.0));
+            store(aspectRad.mul(MathUtils.RTOD), aspect, targetIndex, m);
+        }
+    }
+
+    private static void computeVariance(float[] elev, int upper, int center, int lower, float[] variance,
+                                        int targetIndex, VectorMask<Double> m) {
+        // the same order of operations as TerrainKernel.computeVariance
+        final DoubleVector z0 = load(elev, upper, m);
+        final DoubleVector z1 = load(elev, upper + 1, m);
+        final DoubleVector z2 = load(elev, upper + 2, m);
+        final DoubleVector z3 = load(elev, center, m);
+        final DoubleVector z4 = load(elev, center + 1, m);
+        final DoubleVector z5 = load(elev, center + 2, m);
+        final DoubleVector z6 = load(elev, lower, m);
+        final DoubleVector z7 = load(elev, lower + 1, m);
+        final DoubleVector z8 = load(elev, lower + 2, m);
+        final DoubleVector xBar = z0.add(z1).add(z2).add(z3).add(z4).add(z5).add(z6).add(z7).add(z8).div(9.0);
+        final DoubleVector correction = z0.sub(xBar).add(z1.sub(xBar)).add(z2.sub(xBar)).add(z3.sub(xBar))
+                .add(z4.sub(xBar)).add(z5.sub(xBar)).add(z6.sub(xBar)).add(z7.sub(xBar)).add(z8.sub(xBar));
+        final DoubleVector mean = xBar.add(correction.div(9.0));
+        final DoubleVector d0 = z0.sub(mean);
+        final DoubleVector d1 = z1.sub(mean);
+        final DoubleVector d2 = z2.sub(mean);
+        final DoubleVector d3 = z3.sub(mean);
+        final DoubleVector d4 = z4.sub(mean);
+        final DoubleVector d5 = z5.sub(mean);
+        final DoubleVector d6 = z6.sub(mean);
+        final DoubleVector d7 = z7.sub(mean);
+        final DoubleVector d8 = z8.sub(mean);
+        final DoubleVector accum = d0.mul(d0).add(d1.mul(d1)).add(d2.mul(d2)).add(d3.mul(d3)).add(d4.mul(d4))
+                .add(d5.mul(d5)).add(d6.mul(d6)).add(d7.mul(d7)).add(d8.mul(d8));
+        final DoubleVector accum2 = d0.add(d1).add(d2).add(d3).add(d4).add(d5).add(d6).add(d7).add(d8);
+        store(accum.sub(accum2.mul(accum2).div(9.0)).div(8.0), variance, targetIndex, m);
+    }
+
+    /**
+     * @param x - the arguments, NaN or not negative
+     * @return atan(x), absolute error below 2e-8
+     */
+    static DoubleVector atan(DoubleVector x) {
+        final VectorMask<Double> inverted = x.compare(VectorOperators.GT, 1.0);
+        final DoubleVector r = atanUnit(x.blend(DoubleVector.broadcast(SPECIES, 1.0).div(x), inverted));
+        return r.blend(r.neg().add(HALF_PI), inverted);
+    }
+
+    /**
+     * @param y - the ordinates
+     * @param x - the abscissae
+     * @return atan2(y, x) in [-pi..pi], absolute error below 2e-8, NaN if both are zero
+     */
+    static DoubleVector atan2(DoubleVector y, DoubleVector x) {
+        final DoubleVector ax = x.abs();
+        final DoubleVector ay = y.abs();
+        final VectorMask<Double> steep = ay.compare(VectorOperators.GT, ax);
+        DoubleVector r = atanUnit(ax.min(ay).div(ax.max(ay)));
+        r = r.blend(r.neg().add(HALF_PI), steep);
+        r = r.blend(r.neg().add(Math.PI), x.compare(VectorOperators.LT, 0.0));
+        return r.blend(r.neg(), y.compare(VectorOperators.LT, 0.0));
+    }
+
+    /**
+     * @param x - the arguments in [0..1]
+     * @return atan(x) after Abramowitz and Stegun (1964), 4.4.49
+     */
+    private static DoubleVector atanUnit(DoubleVector x) {
+        final DoubleVector x2 = x.mul(x);
+        return x2.mul(A16).add(A14).mul(x2).add(A12).mul(x2).add(A10).mul(x2).add(A8).mul(x2).add(A6).mul(x2).add(A4)
+                .mul(x2).add(A2).mul(x2).add(1.0).mul(x);
+    }
+
+    private static DoubleVector load(float[] elev, int index, VectorMask<Double> m) {
+        final FloatVector v = m == null ? FloatVector.fromArray(FLOAT_SPECIES, elev, index) :
+                FloatVector.fromArray(FLOAT_SPECIES, elev, index, m.cast(FLOAT_SPECIES));
+        return (DoubleVector) v.convertShape(VectorOperators.F2D, SPECIES, 0);
+    }
+
+    private static void store(DoubleVector v, double[] data, int index, VectorMask<Double> m) {
+        if (m == null) {
+            v.intoArray(data, index);
+        } else {
+            v.intoArray(data, index, m);
+        }
+    }
+
+    private static void store(DoubleVector v, float[] data, int index, VectorMask<Double> m) {
+        final FloatVector f = (FloatVector) v.convertShape(VectorOperators.D2F, FLOAT_SPECIES, 0);
+        if (m == null) {
+            f.intoArray(data, index);
+        } else {
+            f.intoArray(data, index, m.cast(FLOAT_SPECIES));
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package org.esa.snap.slope;
+
+import org.junit.Test;
+
+import java.awt.Dimension;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+
+public class ElevationPrefetcherTest {
+
+    // target tiles of 100 x 100 pixels in an image of 250 x 200 pixels, i.e. three columns and two rows of tiles
+    private static final Rectangle IMAGE_BOUNDS = new Rectangle(250, 200);
+    private static final Dimension TILE_SIZE = new Dimension(100, 100);
+
+    @Test
+    public void testGetSourceTileIndices() {
+        // the next two target tiles, whose source rectangles overlap the neighbouring source tiles by the halo
+        final List<Point> tileIndices = ElevationPrefetcher.getSourceTileIndices(
+                new Rectangle(0, 0, 100, 100), TILE_SIZE, 1, 2, IMAGE_BOUNDS, TILE_SIZE, 100);
+
+        assertEquals(Arrays.asList(new Point(2, 0), new Point(2, 1)), tileIndices);
+    }
+
+    @Test
+    public void testGetSourceTileIndices_wrapsToNextTileRow() {
+        final List<Point> tileIndices = ElevationPrefetcher.getSourceTileIndices(
+                new Rectangle(200, 0, 50, 100), TILE_SIZE, 1, 1, IMAGE_BOUNDS, TILE_SIZE, 100);
+
+        // the next target tile (0, 1) needs the source tiles of columns 0 and 1, the current one those of column 1
+        assertEquals(Arrays.asList(new Point(0, 0), new Point(0, 1)), tileIndices);
+    }
+
+    @Test
+    public void testGetSourceTileIndices_withSmallerSourceTiles() {
+        final List<Point> tileIndices = ElevationPrefetcher.getSourceTileIndices(
+                new Rectangle(0, 100, 100, 100), TILE_SIZE, 0, 5, IMAGE_BOUNDS, new Dimension(50, 200), 100);
+
+        assertEquals(Arrays.asList(new Point(2, 0), new Point(3, 0), new Point(4, 0)), tileIndices);
+    }
+
+    @Test
+    public void testGetSourceTileIndices_bounded() {
+        // the last target tile has no successors
+        assertEquals(0, ElevationPrefetcher.getSourceTileIndices(
+                new Rectangle(200, 100, 50, 100), TILE_SIZE, 1, 4, IMAGE_BOUNDS, TILE_SIZE, 100).size());
+        // the memory budget limits the number of source tiles
+        assertEquals(Arrays.asList(new Point(1, 0)), ElevationPrefetcher.getSourceTileIndices(
+                new Rectangle(0, 0, 100, 100), TILE_SIZE, 0, 4, IMAGE_BOUNDS, TILE_SIZE, 1));
+    }
+}
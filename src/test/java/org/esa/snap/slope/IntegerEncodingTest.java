@@ -0,0 +1,59 @@
+package org.esa.snap.slope;
+
+import org.esa.snap.core.datamodel.ProductData;
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+
+public class IntegerEncodingTest {
+
+    @Test
+    public void testEncode_linear() {
+        final IntegerEncoding encoding = IntegerEncoding.SLOPE_UINT8;
+        assertEquals(ProductData.TYPE_UINT8, encoding.getDataType());
+        assertEquals(0, encoding.encode(0.0f));
+        assertEquals(254, encoding.encode(90.0f));
+        assertEquals(127, encoding.encode(45.0f));
+        assertEquals(0, encoding.encode(-1.0f));
+        assertEquals(254, encoding.encode(100.0f));
+        for (float slope = 0.0f; slope <= 90.0f; slope += 0.01f) {
+            assertEquals(slope, encoding.decode(encoding.encode(slope)), 90.0 / 254 / 2 + 1e-6);
+        }
+    }
+
+    @Test
+    public void testEncode_noData() {
+        assertEquals(255, IntegerEncoding.SLOPE_UINT8.encode(SlopeCalculationOp.NO_DATA_VALUE));
+        assertEquals(255, IntegerEncoding.SLOPE_UINT8.encode(Float.NaN));
+        assertEquals(65535, IntegerEncoding.ASPECT_UINT16.encode(SlopeCalculationOp.NO_DATA_VALUE));
+        assertEquals(65535, IntegerEncoding.ASPECT_UINT16.encode(Float.NaN));
+        assertEquals(65535, IntegerEncoding.VARIANCE_LOG_UINT16.encode(Float.NaN));
+    }
+
+    @Test
+    public void testEncode_log10() {
+        final IntegerEncoding encoding = IntegerEncoding.VARIANCE_LOG_UINT16;
+        assertEquals(0, encoding.encode(0.0f));
+        assertEquals(0, encoding.encode(1.0e-5f));
+        assertEquals(65534, encoding.encode(1.0e9f));
+        assertEquals(1.0e-4, encoding.decode(0), 1e-12);
+        assertEquals(1.0e8, encoding.decode(65534), 1e-2);
+        for (float variance = 1.0e-3f; variance < 1.0e7f; variance *= 1.37f) {
+            assertEquals(variance, encoding.decode(encoding.encode(variance)), variance * 2.2e-4);
+        }
+    }
+
+    @Test
+    public void testEncode_aspect() {
+        final float[] values = new float[]{0.0f, 90.0f, 180.0f, Float.NaN, 359.99f};
+        final int[] codes = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            codes[i] = IntegerEncoding.ASPECT_UINT16.encode(values[i]);
+        }
+        assertEquals(0, codes[0]);
+        assertEquals(16384, codes[1]);
+        assertEquals(32767, codes[2]);
+        assertEquals(65535, codes[3]);
+        assertEquals(65532, codes[4]);
+    }
+}
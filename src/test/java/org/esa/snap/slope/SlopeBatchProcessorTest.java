@@ -0,0 +1,127 @@
+package org.esa.snap.slope;
+
+import com.bc.ceres.core.ProgressMonitor;
+import org.esa.snap.core.dataio.ProductIO;
+import org.esa.snap.core.datamodel.Band;
+import org.esa.snap.core.datamodel.CrsGeoCoding;
+import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.core.datamodel.ProductData;
+import org.esa.snap.core.gpf.GPF;
+import org.esa.snap.core.util.io.FileUtils;
+import org.geotools.referencing.CRS;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import static junit.framework.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class SlopeBatchProcessorTest {
+
+    private static final int MOSAIC_WIDTH = 25;
+    private static final int MOSAIC_HEIGHT = 21;
+
+    private File targetDirectory;
+    private short[] mosaicData;
+
+    @Before
+    public void setUp() {
+        targetDirectory = new File("sao_batch_test_out");
+        if (!targetDirectory.mkdirs()) {
+            fail("Unable to create test target directory");
+        }
+        GPF.getDefaultInstance().getOperatorSpiRegistry().addOperatorSpi(new SlopeCalculationOp.Spi());
+        final Random random = new Random(7);
+        mosaicData = new short[MOSAIC_WIDTH * MOSAIC_HEIGHT];
+        for (int i = 0; i < mosaicData.length; i++) {
+            mosaicData[i] = (short) (100 + random.nextInt(50));
+        }
+    }
+
+    @After
+    public void tearDown() {
+        GPF.getDefaultInstance().getOperatorSpiRegistry().removeOperatorSpi(new SlopeCalculationOp.Spi());
+        if (targetDirectory.isDirectory()) {
+            if (!FileUtils.deleteTree(targetDirectory)) {
+                fail("Unable to delete test directory");
+            }
+        }
+    }
+
+    @Test
+    public void testProcess_adjacentTiles() throws Exception {
+        // 2 x 2 tiles, the right and lower ones smaller
+        assertSameResultsAsMosaic(new int[]{0, 13}, new int[]{13, 12}, new int[]{0, 11}, new int[]{11, 10});
+    }
+
+    @Test
+    public void testProcess_overlappingTiles() throws Exception {
+        // 2 x 2 tiles sharing their edge rows and columns, as SRTM tiles do
+        assertSameResultsAsMosaic(new int[]{0, 12}, new int[]{13, 13}, new int[]{0, 10}, new int[]{11, 11});
+    }
+
+    private void assertSameResultsAsMosaic(int[] tileX, int[] tileWidths, int[] tileY, int[] tileHeights)
+            throws Exception {
+        final File sourceDirectory = new File(targetDirectory, "source");
+        final List<File> sourceFiles = new ArrayList<>();
+        for (int j = 0; j < tileY.length; j++) {
+            for (int i = 0; i < tileX.length; i++) {
+                final Product tile = createProduct(tileX[i], tileY[j], tileWidths[i], tileHeights[j]);
+                final File sourceFile = new File(sourceDirectory, "sao_tile_" + i + "_" + j + ".dim");
+                ProductIO.writeProduct(tile, sourceFile.getPath(), "BEAM-DIMAP");
+                sourceFiles.add(sourceFile);
+            }
+        }
+
+        final List<File> targetFiles = new SlopeBatchProcessor("elevation", "BEAM-DIMAP", 2, 3)
+                .process(sourceFiles, new File(targetDirectory, "target"), ProgressMonitor.NULL);
+        assertEquals(sourceFiles.size(), targetFiles.size());
+
+        final Product mosaic = createProduct(0, 0, MOSAIC_WIDTH, MOSAIC_HEIGHT);
+        final Product operatorProduct = GPF.createProduct("SlopeCalculation", new HashMap<>(), mosaic);
+        ProductIO.writeProduct(operatorProduct, new File(targetDirectory, "sao_op_test.dim").getPath(),
+                               "BEAM-DIMAP");
+        for (int j = 0; j < tileY.length; j++) {
+            for (int i = 0; i < tileX.length; i++) {
+                final Product targetProduct = ProductIO.readProduct(targetFiles.get(j * tileX.length + i));
+                try {
+                    for (String bandName : new String[]{SlopeCalculationOp.SLOPE_BAND_NAME,
+                            SlopeCalculationOp.ASPECT_BAND_NAME, SlopeCalculationOp.VARIANCE_BAND_NAME}) {
+                        final Band expectedBand = operatorProduct.getBand(bandName);
+                        final Band targetBand = targetProduct.getBand(bandName);
+                        targetBand.readRasterDataFully();
+                        for (int y = 0; y < tileHeights[j]; y++) {
+                            for (int x = 0; x < tileWidths[i]; x++) {
+                                assertEquals(expectedBand.getSampleFloat(tileX[i] + x, tileY[j] + y),
+                                             targetBand.getSampleFloat(x, y), 0.0f);
+                            }
+                        }
+                    }
+                } finally {
+                    targetProduct.dispose();
+                }
+            }
+        }
+    }
+
+    private Product createProduct(int x0, int y0, int width, int height) throws Exception {
+        final Product product = new Product("SAO_Test", "sao_test", width, height);
+        product.setSceneGeoCoding(new CrsGeoCoding(CRS.decode("EPSG:32650"), width, height,
+                                                   699960.0 + 10.0 * x0, 4000020.0 - 10.0 * y0,
+                                                   10.0, 10.0, 0.0, 0.0));
+        final Band elevationBand = new Band("elevation", ProductData.TYPE_INT16, width, height);
+        final short[] elevationData = new short[width * height];
+        for (int y = 0; y < height; y++) {
+            System.arraycopy(mosaicData, (y0 + y) * MOSAIC_WIDTH + x0, elevationData, y * width, width);
+        }
+        elevationBand.setDataElems(elevationData);
+        product.addBand(elevationBand);
+        return product;
+    }
+}
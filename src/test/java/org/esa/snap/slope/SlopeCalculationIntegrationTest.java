@@ -1,13 +1,18 @@
 package org.esa.snap.slope;
 
+import org.apache.commons.math3.stat.StatUtils;
 import org.esa.snap.core.dataio.ProductIO;
 import org.esa.snap.core.datamodel.Band;
 import org.esa.snap.core.datamodel.CrsGeoCoding;
+import org.esa.snap.core.datamodel.GeoPos;
+import org.esa.snap.core.datamodel.PixelPos;
 import org.esa.snap.core.datamodel.Product;
 import org.esa.snap.core.datamodel.ProductData;
 import org.esa.snap.core.gpf.GPF;
 import org.esa.snap.core.util.io.FileUtils;
+import org.esa.snap.core.util.math.MathUtils;
 import org.geotools.referencing.CRS;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -18,8 +23,10 @@ import org.opengis.referencing.operation.TransformException;
 import java.awt.geom.AffineTransform;
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Random;
 
 import static junit.framework.Assert.assertEquals;
 import static org.junit.Assert.fail;
@@ -143,6 +150,560 @@ public class SlopeCalculationIntegrationTest {
         }
     }
 
+    @Test
+    public void testSlopeCalculationOp_withSelectedOutputBands() throws FactoryException, TransformException,
+                                                                      IOException {
+        final int width = 4;
+        final int height = 4;
+        final float[] elevationData = new float[]{
+                10.0f, 15.0f, 17.5f, 12.5f,
+                12.0f, 14.0f, 16.0f, 13.0f,
+                13.0f, 11.0f, 13.0f, 14.0f,
+                14.0f, 12.0f, 14.0f, 11.0f};
+        final Product product = createProduct(width, height, ProductData.TYPE_FLOAT32, elevationData);
+
+        final Map<String, Object> parameters = new HashMap<>();
+        parameters.put("outputBands", new String[]{SlopeCalculationOp.SLOPE_BAND_NAME});
+        final Product targetProduct = GPF.createProduct("SlopeCalculation", parameters, product);
+        final String targetFilePath = targetDirectory.getPath() + File.separator + "sao_test.dim";
+        ProductIO.writeProduct(targetProduct, targetFilePath, "BEAM-DIMAP");
+
+        assertEquals(true, targetProduct.containsBand(SlopeCalculationOp.SLOPE_BAND_NAME));
+        assertEquals(false, targetProduct.containsBand(SlopeCalculationOp.ASPECT_BAND_NAME));
+        assertEquals(false, targetProduct.containsBand(SlopeCalculationOp.VARIANCE_BAND_NAME));
+
+        final Band slopeBand = targetProduct.getBand(SlopeCalculationOp.SLOPE_BAND_NAME);
+        float[][] expectedSlope = new float[][]{
+                {12.4894f, 18.354824f, 6.554816f, 12.680384f},
+                {6.1373796f, 12.802796f, 8.248572f, 7.125016f},
+                {4.044691f, 4.044691f, 6.37937f, 6.37937f},
+                {6.37937f, 2.8624053f, 0.0f, 8.049467f}};
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                assertEquals(slopeBand.getSampleFloat(x, y), expectedSlope[y][x], 1e-5);
+            }
+        }
+    }
+
+    @Test
+    public void testSlopeCalculationOp_withTerrainDerivatives() throws FactoryException, TransformException,
+                                                                     IOException {
+        final int width = 4;
+        final int height = 4;
+        final float[] elevationData = new float[]{
+                10.0f, 15.0f, 17.5f, 12.5f,
+                12.0f, 14.0f, 16.0f, 13.0f,
+                13.0f, 11.0f, 13.0f, 14.0f,
+                14.0f, 12.0f, 14.0f, 11.0f};
+        final Product product = createProduct(width, height, ProductData.TYPE_FLOAT32, elevationData);
+
+        final Map<String, Object> parameters = new HashMap<>();
+        parameters.put("outputBands", new String[]{SlopeCalculationOp.SLOPE_BAND_NAME,
+                SlopeCalculationOp.ASPECT_BAND_NAME, SlopeCalculationOp.HILLSHADE_BAND_NAME,
+                SlopeCalculationOp.PROFILE_CURVATURE_BAND_NAME, SlopeCalculationOp.PLAN_CURVATURE_BAND_NAME,
+                SlopeCalculationOp.RUGGEDNESS_BAND_NAME, SlopeCalculationOp.TOPOGRAPHIC_POSITION_BAND_NAME});
+        parameters.put("sunAzimuth", 135.0);
+        parameters.put("sunElevation", 30.0);
+        final Product targetProduct = GPF.createProduct("SlopeCalculation", parameters, product);
+        final String targetFilePath = targetDirectory.getPath() + File.separator + "sao_test.dim";
+        ProductIO.writeProduct(targetProduct, targetFilePath, "BEAM-DIMAP");
+
+        assertEquals(false, targetProduct.containsBand(SlopeCalculationOp.VARIANCE_BAND_NAME));
+        final Band slopeBand = targetProduct.getBand(SlopeCalculationOp.SLOPE_BAND_NAME);
+        final Band aspectBand = targetProduct.getBand(SlopeCalculationOp.ASPECT_BAND_NAME);
+        final Band hillshadeBand = targetProduct.getBand(SlopeCalculationOp.HILLSHADE_BAND_NAME);
+        final Band profileCurvatureBand = targetProduct.getBand(SlopeCalculationOp.PROFILE_CURVATURE_BAND_NAME);
+        final Band planCurvatureBand = targetProduct.getBand(SlopeCalculationOp.PLAN_CURVATURE_BAND_NAME);
+        final Band ruggednessBand = targetProduct.getBand(SlopeCalculationOp.RUGGEDNESS_BAND_NAME);
+        final Band topographicPositionBand = targetProduct.getBand(SlopeCalculationOp.TOPOGRAPHIC_POSITION_BAND_NAME);
+
+        // hillshade must agree with the slope and aspect of the same pass
+        final double zenith = Math.toRadians(60.0);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                final double slope = Math.toRadians(slopeBand.getSampleFloat(x, y));
+                final double aspect = Math.toRadians(aspectBand.getSampleFloat(x, y));
+                double expectedHillshade = Math.cos(zenith) * Math.cos(slope);
+                if (slope > 0.0) {
+                    expectedHillshade += Math.sin(zenith) * Math.sin(slope) * Math.cos(Math.toRadians(135.0) - aspect);
+                }
+                assertEquals(Math.max(0.0, expectedHillshade), hillshadeBand.getSampleFloat(x, y), 1e-5);
+            }
+        }
+        assertEquals(0.5f, hillshadeBand.getSampleFloat(2, 3), 1e-6);
+        assertEquals(true, Float.isNaN(profileCurvatureBand.getSampleFloat(2, 3)));
+        assertEquals(true, Float.isNaN(planCurvatureBand.getSampleFloat(2, 3)));
+
+        assertEquals(6.946222f, ruggednessBand.getSampleFloat(1, 1), 1e-5);
+        assertEquals(0.5625f, topographicPositionBand.getSampleFloat(1, 1), 1e-6);
+    }
+
+    @Test
+    public void testSlopeCalculationOp_withNoDataValue() throws FactoryException, TransformException, IOException {
+        final int width = 4;
+        final int height = 4;
+        final float[] elevationData = new float[]{
+                10.0f, 15.0f, 17.5f, -32768.0f,
+                12.0f, 14.0f, 16.0f, 13.0f,
+                13.0f, 11.0f, 13.0f, 14.0f,
+                14.0f, 12.0f, 14.0f, 11.0f};
+        final Product product = createProduct(width, height, ProductData.TYPE_FLOAT32, elevationData);
+        final Band elevationBand = product.getBand("elevation");
+        elevationBand.setNoDataValue(-32768.0);
+        elevationBand.setNoDataValueUsed(true);
+
+        final Map<String, Object> parameters = new HashMap<>();
+        final Product targetProduct = GPF.createProduct("SlopeCalculation", parameters, product);
+        final String targetFilePath = targetDirectory.getPath() + File.separator + "sao_test.dim";
+        ProductIO.writeProduct(targetProduct, targetFilePath, "BEAM-DIMAP");
+
+        final Band slopeBand = targetProduct.getBand(SlopeCalculationOp.SLOPE_BAND_NAME);
+        final Band aspectBand = targetProduct.getBand(SlopeCalculationOp.ASPECT_BAND_NAME);
+        final Band varianceBand = targetProduct.getBand(SlopeCalculationOp.VARIANCE_BAND_NAME);
+        // the pixels next to the void get no-data, the others are not affected by the void
+        float[][] expectedSlope = new float[][]{
+                {12.4894f, 18.354824f, -9999.0f, -9999.0f},
+                {6.1373796f, 12.802796f, -9999.0f, -9999.0f},
+                {4.044691f, 4.044691f, 6.37937f, 6.37937f},
+                {6.37937f, 2.8624053f, 0.0f, 8.049467f}};
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                assertEquals(expectedSlope[y][x], slopeBand.getSampleFloat(x, y), 1e-5);
+                if (expectedSlope[y][x] == -9999.0f) {
+                    assertEquals(-9999.0f, aspectBand.getSampleFloat(x, y));
+                    assertEquals(-9999.0f, varianceBand.getSampleFloat(x, y));
+                } else {
+                    assertEquals(true, varianceBand.getSampleFloat(x, y) < 100.0f);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSlopeCalculationOp_withInvalidProduct() throws FactoryException, TransformException,
+                                                                 IOException {
+        final int width = 4;
+        final int height = 4;
+        final short[] elevationData = new short[width * height];
+        Arrays.fill(elevationData, (short) -32768);
+        final Product product = createProduct(width, height, ProductData.TYPE_INT16, elevationData);
+        final Band elevationBand = product.getBand("elevation");
+        elevationBand.setNoDataValue(-32768.0);
+        elevationBand.setNoDataValueUsed(true);
+
+        final Map<String, Object> parameters = new HashMap<>();
+        parameters.put("windowSize", 5);
+        final Product targetProduct = GPF.createProduct("SlopeCalculation", parameters, product);
+        final String targetFilePath = targetDirectory.getPath() + File.separator + "sao_test.dim";
+        ProductIO.writeProduct(targetProduct, targetFilePath, "BEAM-DIMAP");
+
+        for (Band band : targetProduct.getBands()) {
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    assertEquals(-9999.0f, band.getSampleFloat(x, y));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSlopeCalculationOp_withRandomInputs() throws FactoryException, TransformException, IOException {
+        final int width = 50;
+        final int height = 40;
+        final Random random = new Random(1234);
+        final float[] elevationData = new float[width * height];
+        for (int i = 0; i < elevationData.length; i++) {
+            elevationData[i] = 200.0f + 100.0f * random.nextFloat();
+        }
+        final Product product = createProduct(width, height, ProductData.TYPE_FLOAT32, elevationData);
+        product.setPreferredTileSize(16, 16);
+
+        final Map<String, Object> parameters = new HashMap<>();
+        final Product targetProduct = GPF.createProduct("SlopeCalculation", parameters, product);
+        final String targetFilePath = targetDirectory.getPath() + File.separator + "sao_test.dim";
+        ProductIO.writeProduct(targetProduct, targetFilePath, "BEAM-DIMAP");
+
+        final Band slopeBand = targetProduct.getBand(SlopeCalculationOp.SLOPE_BAND_NAME);
+        final Band aspectBand = targetProduct.getBand(SlopeCalculationOp.ASPECT_BAND_NAME);
+        final Band varianceBand = targetProduct.getBand(SlopeCalculationOp.VARIANCE_BAND_NAME);
+
+        // the per-pixel reference, with the image border extended by copying the edge pixels
+        final double[] window = new double[9];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                for (int i = 0; i < 9; i++) {
+                    final int wx = Math.min(Math.max(x - 1 + i % 3, 0), width - 1);
+                    final int wy = Math.min(Math.max(y - 1 + i / 3, 0), height - 1);
+                    window[i] = elevationData[wy * width + wx];
+                }
+                final float[] expected = SlopeReference.computeSlopeAspectVariance(window, 10.0);
+                assertEquals((float) (expected[0] * MathUtils.RTOD), slopeBand.getSampleFloat(x, y), 0.0f);
+                assertEquals((float) (expected[1] * MathUtils.RTOD), aspectBand.getSampleFloat(x, y), 0.0f);
+                assertEquals(expected[2], varianceBand.getSampleFloat(x, y), 0.0f);
+            }
+        }
+    }
+
+    @Test
+    public void testSlopeCalculationOp_withIntegerEncoding() throws FactoryException, TransformException,
+                                                                  IOException {
+        assertIntegerEncoding(SlopeCalculationOp.ENCODING_UINT8, 3, 90.0 / 254 / 2);
+        assertIntegerEncoding(SlopeCalculationOp.ENCODING_UINT16, 5, 90.0 / 65534 / 2);
+    }
+
+    @Test
+    public void testSlopeCalculationOp_withMetrics() throws FactoryException, TransformException, IOException {
+        final int width = 50;
+        final int height = 40;
+        final Product product = createProduct(width, height, ProductData.TYPE_FLOAT32, new float[width * height]);
+        product.setPreferredTileSize(16, 16);
+
+        final SlopeCalculationOp operator = new SlopeCalculationOp();
+        operator.setSourceProduct(product);
+        operator.setParameter("collectMetrics", true);
+        final Product targetProduct = operator.getTargetProduct();
+        final String targetFilePath = targetDirectory.getPath() + File.separator + "sao_test.dim";
+        ProductIO.writeProduct(targetProduct, targetFilePath, "BEAM-DIMAP");
+
+        final SlopeCalculationMetrics.Snapshot snapshot = operator.getMetrics().getSnapshot();
+        // tiles of 16 x 16 pixels
+        assertEquals(4 * 3, snapshot.getTileCount());
+        assertEquals(width * height, snapshot.getPixelCount());
+        assertEquals(true, snapshot.getWallNanos() > 0);
+        operator.dispose();
+    }
+
+    @Test
+    public void testSlopeCalculationOp_withTileCache() throws FactoryException, TransformException, IOException {
+        final int width = 40;
+        final int height = 30;
+        final Random random = new Random(17);
+        final float[] elevationData = new float[width * height];
+        for (int i = 0; i < elevationData.length; i++) {
+            elevationData[i] = 500.0f + 50.0f * random.nextFloat();
+        }
+        final Product product = createProduct(width, height, ProductData.TYPE_FLOAT32, elevationData);
+        product.setPreferredTileSize(16, 16);
+
+        final File cacheDirectory = new File(targetDirectory, "tile_cache");
+        final Map<String, Object> parameters = new HashMap<>();
+        parameters.put("tileCacheDirectory", cacheDirectory);
+        parameters.put("outputEncoding", SlopeCalculationOp.ENCODING_UINT16);
+        final Product computedProduct = GPF.createProduct("SlopeCalculation", parameters, product);
+        ProductIO.writeProduct(computedProduct, targetDirectory.getPath() + File.separator + "sao_computed.dim",
+                               "BEAM-DIMAP");
+        final File[] entries = cacheDirectory.listFiles();
+        // tiles of 16 x 16 pixels
+        assertEquals(3 * 2, entries != null ? entries.length : 0);
+
+        final Product cachedProduct = GPF.createProduct("SlopeCalculation", parameters, product);
+        ProductIO.writeProduct(cachedProduct, targetDirectory.getPath() + File.separator + "sao_cached.dim",
+                               "BEAM-DIMAP");
+        for (String bandName : new String[]{SlopeCalculationOp.SLOPE_BAND_NAME, SlopeCalculationOp.ASPECT_BAND_NAME,
+                SlopeCalculationOp.VARIANCE_BAND_NAME}) {
+            final Band computedBand = computedProduct.getBand(bandName);
+            final Band cachedBand = cachedProduct.getBand(bandName);
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    assertEquals(computedBand.getSampleFloat(x, y), cachedBand.getSampleFloat(x, y), 0.0f);
+                }
+            }
+        }
+        final SlopeTileCache tileCache = SlopeTileCache.getInstance(cacheDirectory, 0L);
+        assertEquals(true, tileCache.getHitCount() >= 3 * 2);
+    }
+
+    @Test
+    public void testSlopeCalculationOp_withPrefetching() throws FactoryException, TransformException, IOException {
+        final int width = 50;
+        final int height = 40;
+        final Random random = new Random(21);
+        final short[] elevationData = new short[width * height];
+        for (int i = 0; i < elevationData.length; i++) {
+            elevationData[i] = (short) (500 + random.nextInt(100));
+        }
+        final Product product = createProduct(width, height, ProductData.TYPE_INT16, elevationData);
+        product.setPreferredTileSize(16, 16);
+
+        final Product expectedProduct = GPF.createProduct("SlopeCalculation", new HashMap<>(), product);
+        ProductIO.writeProduct(expectedProduct, targetDirectory.getPath() + File.separator + "sao_expected.dim",
+                               "BEAM-DIMAP");
+        final Map<String, Object> parameters = new HashMap<>();
+        parameters.put("prefetchDepth", 3);
+        final Product prefetchedProduct = GPF.createProduct("SlopeCalculation", parameters, product);
+        ProductIO.writeProduct(prefetchedProduct, targetDirectory.getPath() + File.separator + "sao_prefetched.dim",
+                               "BEAM-DIMAP");
+
+        for (String bandName : new String[]{SlopeCalculationOp.SLOPE_BAND_NAME, SlopeCalculationOp.ASPECT_BAND_NAME,
+                SlopeCalculationOp.VARIANCE_BAND_NAME}) {
+            final Band expectedBand = expectedProduct.getBand(bandName);
+            final Band prefetchedBand = prefetchedProduct.getBand(bandName);
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    assertEquals(expectedBand.getSampleFloat(x, y), prefetchedBand.getSampleFloat(x, y), 0.0f);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSlopeCalculationOp_withMultiSizeProduct()
+            throws FactoryException, TransformException, IOException {
+        final int width = 40;
+        final int height = 30;
+        final int elevationWidth = width / 2;
+        final int elevationHeight = height / 2;
+        final Product product = new Product("SAO_Test", "sao_test", width, height);
+        product.setSceneGeoCoding(
+                new CrsGeoCoding(CRS.decode("EPSG:32650"), width, height, 699960.0, 4000020.0, 10.0, 10.0, 0.0, 0.0));
+        final Band reflectanceBand = new Band("reflectance", ProductData.TYPE_FLOAT32, width, height);
+        reflectanceBand.setDataElems(new float[width * height]);
+        product.addBand(reflectanceBand);
+        // the elevation band has half the resolution of the scene
+        final CrsGeoCoding elevationGeoCoding = new CrsGeoCoding(CRS.decode("EPSG:32650"), elevationWidth,
+                                                                 elevationHeight, 699960.0, 4000020.0, 20.0, 20.0,
+                                                                 0.0, 0.0);
+        final Band elevationBand = new Band("elevation", ProductData.TYPE_FLOAT32, elevationWidth, elevationHeight);
+        elevationBand.setGeoCoding(elevationGeoCoding);
+        final Random random = new Random(19);
+        final float[] elevationData = new float[elevationWidth * elevationHeight];
+        for (int i = 0; i < elevationData.length; i++) {
+            elevationData[i] = 500.0f + 50.0f * random.nextFloat();
+        }
+        elevationBand.setDataElems(elevationData);
+        product.addBand(elevationBand);
+
+        // the same elevations in a single-size product
+        final Product singleSizeProduct = new Product("SAO_Test", "sao_test", elevationWidth, elevationHeight);
+        singleSizeProduct.setSceneGeoCoding(elevationGeoCoding);
+        final Band singleSizeElevationBand =
+                new Band("elevation", ProductData.TYPE_FLOAT32, elevationWidth, elevationHeight);
+        singleSizeElevationBand.setDataElems(elevationData.clone());
+        singleSizeProduct.addBand(singleSizeElevationBand);
+
+        final Map<String, Object> parameters = new HashMap<>();
+        parameters.put("outputBands", new String[]{SlopeCalculationOp.SLOPE_BAND_NAME,
+                SlopeCalculationOp.ASPECT_BAND_NAME, SlopeCalculationOp.ORIENTATION_BAND_NAME});
+        final Product targetProduct = GPF.createProduct("SlopeCalculation", parameters, product);
+        ProductIO.writeProduct(targetProduct, targetDirectory.getPath() + File.separator + "sao_multi_size.dim",
+                               "BEAM-DIMAP");
+        final Product expectedProduct = GPF.createProduct("SlopeCalculation", parameters, singleSizeProduct);
+        ProductIO.writeProduct(expectedProduct, targetDirectory.getPath() + File.separator + "sao_single_size.dim",
+                               "BEAM-DIMAP");
+
+        assertEquals(elevationWidth, targetProduct.getSceneRasterWidth());
+        assertEquals(elevationHeight, targetProduct.getSceneRasterHeight());
+        final GeoPos geoPos = targetProduct.getSceneGeoCoding().getGeoPos(new PixelPos(3.5, 2.5), null);
+        final GeoPos expectedGeoPos = elevationGeoCoding.getGeoPos(new PixelPos(3.5, 2.5), null);
+        assertEquals(expectedGeoPos.getLat(), geoPos.getLat(), 1e-8);
+        assertEquals(expectedGeoPos.getLon(), geoPos.getLon(), 1e-8);
+        for (String bandName : new String[]{SlopeCalculationOp.SLOPE_BAND_NAME, SlopeCalculationOp.ASPECT_BAND_NAME,
+                SlopeCalculationOp.ORIENTATION_BAND_NAME}) {
+            final Band targetBand = targetProduct.getBand(bandName);
+            final Band expectedBand = expectedProduct.getBand(bandName);
+            for (int y = 0; y < elevationHeight; y++) {
+                for (int x = 0; x < elevationWidth; x++) {
+                    assertEquals(expectedBand.getSampleFloat(x, y), targetBand.getSampleFloat(x, y), 0.0f);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSlopeCalculationOp_withLargerWindow() throws FactoryException, TransformException, IOException {
+        final int width = 30;
+        final int height = 20;
+        final int windowSize = 7;
+        final Random random = new Random(99);
+        final float[] elevationData = new float[width * height];
+        for (int i = 0; i < elevationData.length; i++) {
+            elevationData[i] = 500.0f + 50.0f * random.nextFloat();
+        }
+        final Product product = createProduct(width, height, ProductData.TYPE_FLOAT32, elevationData);
+        product.setPreferredTileSize(16, 16);
+
+        final Map<String, Object> parameters = new HashMap<>();
+        parameters.put("windowSize", windowSize);
+        final Product targetProduct = GPF.createProduct("SlopeCalculation", parameters, product);
+        final String targetFilePath = targetDirectory.getPath() + File.separator + "sao_test.dim";
+        ProductIO.writeProduct(targetProduct, targetFilePath, "BEAM-DIMAP");
+
+        final Band varianceBand = targetProduct.getBand(SlopeCalculationOp.VARIANCE_BAND_NAME);
+        final double[] window = new double[windowSize * windowSize];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                for (int i = 0; i < window.length; i++) {
+                    final int wx = Math.min(Math.max(x - windowSize / 2 + i % windowSize, 0), width - 1);
+                    final int wy = Math.min(Math.max(y - windowSize / 2 + i / windowSize, 0), height - 1);
+                    window[i] = elevationData[wy * width + wx];
+                }
+                final double expected = StatUtils.variance(window);
+                assertEquals(expected, varianceBand.getSampleFloat(x, y), expected * 1e-5);
+            }
+        }
+    }
+
+    @Test
+    public void testSlopeCalculationOp_withGeographicInputs() throws FactoryException, TransformException,
+                                                                     IOException {
+        final int width = 8;
+        final int height = 30;
+        final double pixelSize = 0.001;
+        final Product product = new Product("SAO_Test", "sao_test", width, height);
+        product.setPreferredTileSize(8, 8);
+        final CrsGeoCoding crsGeoCoding = new CrsGeoCoding(DefaultGeographicCRS.WGS84, width, height,
+                                                           10.0, 60.0, pixelSize, pixelSize, 0.0, 0.0);
+        product.setSceneGeoCoding(crsGeoCoding);
+        final Band elevationBand = new Band("elevation", ProductData.TYPE_FLOAT32, width, height);
+        // a ramp rising by 10 m per pixel towards East
+        final float[] elevationData = new float[width * height];
+        for (int i = 0; i < elevationData.length; i++) {
+            elevationData[i] = 100.0f + 10.0f * (i % width);
+        }
+        elevationBand.setDataElems(elevationData);
+        product.addBand(elevationBand);
+
+        final Map<String, Object> parameters = new HashMap<>();
+        final Product targetProduct = GPF.createProduct("SlopeCalculation", parameters, product);
+        final String targetFilePath = targetDirectory.getPath() + File.separator + "sao_test.dim";
+        ProductIO.writeProduct(targetProduct, targetFilePath, "BEAM-DIMAP");
+
+        final Band slopeBand = targetProduct.getBand(SlopeCalculationOp.SLOPE_BAND_NAME);
+        final Band aspectBand = targetProduct.getBand(SlopeCalculationOp.ASPECT_BAND_NAME);
+        for (int y = 0; y < height; y++) {
+            final double lat = 60.0 - (y + 0.5) * pixelSize;
+            final double pixelSizeX = 1000.0 * SlopeCalculationOp.computeDistance(lat, 10.0, lat, 10.0 + pixelSize);
+            final float expectedSlope = (float) Math.toDegrees(Math.atan(10.0 / pixelSizeX));
+            for (int x = 1; x < width - 1; x++) {
+                assertEquals(expectedSlope, slopeBand.getSampleFloat(x, y), 1e-4);
+                assertEquals(270.0f, aspectBand.getSampleFloat(x, y), 1e-4);
+            }
+        }
+    }
+
+    @Test
+    public void testSlopeCalculationOp_withOrientation() throws FactoryException, TransformException, IOException {
+        final int width = 6;
+        final int height = 5;
+        final Product product = new Product("SAO_Test", "sao_test", width, height);
+        final CrsGeoCoding crsGeoCoding = new CrsGeoCoding(CRS.decode("EPSG:32650"), width, height,
+                                                           300000.0, 4000020.0, 10000.0, 10000.0, 0.0, 0.0);
+        product.setSceneGeoCoding(crsGeoCoding);
+        final Band elevationBand = new Band("elevation", ProductData.TYPE_FLOAT32, width, height);
+        elevationBand.setDataElems(new float[width * height]);
+        product.addBand(elevationBand);
+
+        final Map<String, Object> parameters = new HashMap<>();
+        parameters.put("outputBands", new String[]{SlopeCalculationOp.SLOPE_BAND_NAME,
+                SlopeCalculationOp.ORIENTATION_BAND_NAME});
+        final Product targetProduct = GPF.createProduct("SlopeCalculation", parameters, product);
+        final String targetFilePath = targetDirectory.getPath() + File.separator + "sao_test.dim";
+        ProductIO.writeProduct(targetProduct, targetFilePath, "BEAM-DIMAP");
+
+        assertEquals(true, targetProduct.containsBand(SlopeCalculationOp.ORIENTATION_BAND_NAME));
+        final Band orientationBand = targetProduct.getBand(SlopeCalculationOp.ORIENTATION_BAND_NAME);
+
+        // the UTM grid is rotated against the geographic grid by the meridian convergence
+        final float[] latData = new float[width];
+        final float[] lonData = new float[width];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                final GeoPos geoPos = crsGeoCoding.getGeoPos(new PixelPos(x + 0.5, y + 0.5), null);
+                latData[x] = (float) geoPos.getLat();
+                lonData[x] = (float) geoPos.getLon();
+            }
+            for (int x = 1; x < width - 1; x++) {
+                final double expected = Math.toDegrees(SlopeCalculationOp.computeOrientation(latData, lonData, x));
+                assertEquals(expected, orientationBand.getSampleFloat(x, y), 1e-2);
+            }
+        }
+    }
+
+    private static Product createProduct(int width, int height, int dataType, Object elevationData)
+            throws FactoryException, TransformException {
+        final Product product = new Product("SAO_Test", "sao_test", width, height);
+        final CrsGeoCoding crsGeoCoding =
+                new CrsGeoCoding(CRS.decode("EPSG:32650"), width, height, 699960.0, 4000020.0, 10.0, 10.0, 0.0, 0.0);
+        product.setSceneGeoCoding(crsGeoCoding);
+        final Band elevationBand = new Band("elevation", dataType, width, height);
+        elevationBand.setDataElems(elevationData);
+        product.addBand(elevationBand);
+        return product;
+    }
+
+    private void assertIntegerEncoding(String outputEncoding, int windowSize, double maxSlopeError)
+            throws FactoryException, TransformException, IOException {
+        final int width = 50;
+        final int height = 40;
+        final Random random = new Random(5678);
+        final float[] elevationData = new float[width * height];
+        for (int i = 0; i < elevationData.length; i++) {
+            elevationData[i] = 200.0f + 100.0f * random.nextFloat();
+        }
+        final Product product = createProduct(width, height, ProductData.TYPE_FLOAT32, elevationData);
+        product.setPreferredTileSize(16, 16);
+
+        final Map<String, Object> parameters = new HashMap<>();
+        parameters.put("outputBands", new String[]{SlopeCalculationOp.SLOPE_BAND_NAME,
+                SlopeCalculationOp.ASPECT_BAND_NAME, SlopeCalculationOp.VARIANCE_BAND_NAME,
+                SlopeCalculationOp.HILLSHADE_BAND_NAME});
+        parameters.put("windowSize", windowSize);
+        final Product floatProduct = GPF.createProduct("SlopeCalculation", parameters, product);
+        ProductIO.writeProduct(floatProduct, targetDirectory.getPath() + File.separator + "float.dim", "BEAM-DIMAP");
+        parameters.put("outputEncoding", outputEncoding);
+        parameters.put("logScaledVariance", true);
+        final Product integerProduct = GPF.createProduct("SlopeCalculation", parameters, product);
+        ProductIO.writeProduct(integerProduct, targetDirectory.getPath() + File.separator + "integer.dim",
+                               "BEAM-DIMAP");
+
+        final Band integerSlopeBand = integerProduct.getBand(SlopeCalculationOp.SLOPE_BAND_NAME);
+        assertEquals(SlopeCalculationOp.ENCODING_UINT8.equals(outputEncoding) ?
+                             ProductData.TYPE_UINT8 : ProductData.TYPE_UINT16, integerSlopeBand.getDataType());
+        assertEquals(ProductData.TYPE_UINT16,
+                     integerProduct.getBand(SlopeCalculationOp.ASPECT_BAND_NAME).getDataType());
+        assertEquals(ProductData.TYPE_UINT16,
+                     integerProduct.getBand(SlopeCalculationOp.VARIANCE_BAND_NAME).getDataType());
+        assertEquals(ProductData.TYPE_FLOAT32,
+                     integerProduct.getBand(SlopeCalculationOp.HILLSHADE_BAND_NAME).getDataType());
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                assertEquals(floatProduct.getBand(SlopeCalculationOp.SLOPE_BAND_NAME).getSampleFloat(x, y),
+                             integerSlopeBand.getSampleFloat(x, y), maxSlopeError + 1e-5);
+                final float aspect = floatProduct.getBand(SlopeCalculationOp.ASPECT_BAND_NAME).getSampleFloat(x, y);
+                assertEquals(aspect,
+                             integerProduct.getBand(SlopeCalculationOp.ASPECT_BAND_NAME).getSampleFloat(x, y),
+                             360.0 / 65534 / 2 + 1e-4);
+                final float variance =
+                        floatProduct.getBand(SlopeCalculationOp.VARIANCE_BAND_NAME).getSampleFloat(x, y);
+                assertEquals(variance,
+                             integerProduct.getBand(SlopeCalculationOp.VARIANCE_BAND_NAME).getSampleFloat(x, y),
+                             variance * 2.2e-4);
+                assertEquals(floatProduct.getBand(SlopeCalculationOp.HILLSHADE_BAND_NAME).getSampleFloat(x, y),
+                             integerProduct.getBand(SlopeCalculationOp.HILLSHADE_BAND_NAME).getSampleFloat(x, y),
+                             0.0f);
+            }
+        }
+    }
+
+    @Test
+    public void testComputePixelSizes() throws FactoryException, TransformException {
+        final int width = 4;
+        final int height = 100;
+        final CrsGeoCoding crsGeoCoding =
+                new CrsGeoCoding(DefaultGeographicCRS.WGS84, width, height, 10.0, 60.0, 0.1, 0.1, 0.0, 0.0);
+        final double[] pixelSizesX = new double[height];
+        final double[] pixelSizesY = new double[height];
+        SlopeCalculationOp.computePixelSizes(crsGeoCoding, width, height, pixelSizesX, pixelSizesY);
+
+        // 0.1 degrees of latitude are 11.1 km, of longitude 11.1 km scaled by the cosine of latitude
+        for (int y = 0; y < height; y++) {
+            final double lat = 60.0 - (y + 0.5) * 0.1;
+            assertEquals(11119.5 * Math.cos(Math.toRadians(lat)), pixelSizesX[y], 1.0);
+            assertEquals(11119.5, pixelSizesY[y], 1.0);
+        }
+    }
+
     @Test
     public void testSpatialResolution() throws FactoryException, TransformException {
         final int width = 4;
@@ -157,7 +718,7 @@ public class SlopeCalculationIntegrationTest {
         final double spatialResolution1 = ((AffineTransform) i2m).getScaleX();
 
         // fallback
-        double spatialResolution2 = SlopeCalculationOp.computeSpatialResolution(product, crsGeoCoding);
+        double spatialResolution2 = SlopeCalculationOp.computeSpatialResolution(width, height, crsGeoCoding);
 
         assertEquals(spatialResolution1, spatialResolution2, 0.1);
     }
@@ -0,0 +1,51 @@
+package org.esa.snap.slope;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+
+public class SlopeCalculationMetricsTest {
+
+    @Test
+    public void testGetBucket() {
+        for (long nanos : new long[]{0L, 1L, 7L, 8L, 9L, 15L, 16L, 17L, 1000L, 123456789L, Long.MAX_VALUE / 3}) {
+            final long upperBound = SlopeCalculationMetrics.getBucketUpperBound(SlopeCalculationMetrics.getBucket(nanos));
+            assertEquals(true, nanos < upperBound);
+            // buckets are at most 12.5 percent wide
+            assertEquals(true, upperBound <= Math.max(nanos * 1.125, nanos + 1));
+        }
+        assertEquals(SlopeCalculationMetrics.getBucket(1000L), SlopeCalculationMetrics.getBucket(1023L));
+    }
+
+    @Test
+    public void testRecordTile() {
+        final SlopeCalculationMetrics metrics = new SlopeCalculationMetrics();
+        for (int i = 0; i < 100; i++) {
+            // tiles of 1 ms to 100 ms, computed one after another
+            final long startNanos = 1000000000L + i * 200000000L;
+            metrics.recordTile(256 * 256, startNanos, startNanos + (i + 1) * 1000000L, 100000L, 50000L);
+        }
+
+        final SlopeCalculationMetrics.Snapshot snapshot = metrics.getSnapshot();
+        assertEquals(100, snapshot.getTileCount());
+        assertEquals(100 * 256 * 256, snapshot.getPixelCount());
+        assertEquals(100 * 100000L, snapshot.getSourceFetchNanos());
+        assertEquals(100 * 50000L, snapshot.getTargetWriteNanos());
+        assertEquals(5050 * 1000000L - 100 * 150000L, snapshot.getComputeNanos());
+        assertEquals(99 * 200000000L + 100000000L, snapshot.getWallNanos());
+        assertEquals(100 * 256 * 256 * 1.0e3 / (99 * 200000000L + 100000000L), snapshot.getMegapixelsPerSecond(),
+                     1e-9);
+        assertEquals(50.0, snapshot.getTileMillis(0.5), 50.0 * 0.125);
+        assertEquals(90.0, snapshot.getTileMillis(0.9), 90.0 * 0.125);
+        assertEquals(99.0, snapshot.getTileMillis(0.99), 99.0 * 0.125);
+        assertEquals(true, snapshot.getTileMillis(1.0) >= 100.0);
+
+        assertEquals(100L, metrics.getTileCount());
+        assertEquals(snapshot.getTileMillis(0.5), metrics.getMedianTileMillis());
+
+        metrics.reset();
+        assertEquals(0, metrics.getSnapshot().getTileCount());
+        assertEquals(0.0, metrics.getSnapshot().getMegapixelsPerSecond());
+        assertEquals(0.0, metrics.getSnapshot().getTileMillis(0.5));
+    }
+}
@@ -2,34 +2,38 @@ package org.esa.snap.slope;
 
 import org.junit.Test;
 
+import java.awt.Rectangle;
+
 import static junit.framework.Assert.assertEquals;
-import static org.junit.Assert.assertTrue;
 
 public class SlopeCalculationOpTest {
 
     @Test
-    public void testComputeSlopeAspectVariance() {
-        double[] altitude = new double[]{
-                10.0f, 10.0f, 15.0f,
-                10.0f, 10.0f, 15.0f,
-                12.0f, 12.0f, 14.0f};
-        final float[] slopeAndAspect_7 = SlopeCalculationOp.computeSlopeAspectVariance(altitude, 10);
-        double[] altitude2 = new double[]{
-                14.0f, 12.0f, 14.0f,
-                14.0f, 12.0f, 14.0f,
-                14.0f, 12.0f, 14.0f};
-        final float[] slopeAndAspect_27 = SlopeCalculationOp.computeSlopeAspectVariance(altitude2, 10);
+    public void testGetInvalidRows() {
+        assertEquals(null, SlopeCalculationOp.getInvalidRows(new int[]{1, 1, 1, 1, 1, 1}, 3, 2));
 
-        assertEquals(slopeAndAspect_7[0], 0.21798114, 1e-7);
-        assertEquals(slopeAndAspect_27[0], 0.0, 1e-7);
+        final boolean[] invalidRows = SlopeCalculationOp.getInvalidRows(new int[]{1, 1, 1, 1, 0, 1, 0, 0, 1}, 3, 3);
+        assertEquals(3, invalidRows.length);
+        assertEquals(false, invalidRows[0]);
+        assertEquals(true, invalidRows[1]);
+        assertEquals(true, invalidRows[2]);
+    }
 
-        assertEquals(slopeAndAspect_7[1], 4.9984403, 1e-7);
-        assertTrue(Double.isNaN(slopeAndAspect_27[1]));
+    @Test
+    public void testContainsValidPixel() {
+        // a 2x2 target rectangle within a halo of one pixel, valid pixels in the halo only
+        final int[] validMask = new int[]{
+                1, 1, 1, 1,
+                1, 0, 0, 1,
+                1, 0, 0, 1,
+                1, 1, 1, 1};
+        final Rectangle targetRectangle = new Rectangle(10, 20, 2, 2);
+        assertEquals(false, SlopeCalculationOp.containsValidPixel(validMask, 4, 1, targetRectangle));
 
-        assertEquals(slopeAndAspect_7[2], 4.75, 1e-6);
+        validMask[10] = 1;
+        assertEquals(true, SlopeCalculationOp.containsValidPixel(validMask, 4, 1, targetRectangle));
     }
 
-
     @Test
     public void testComputeOrientation() {
         float[] latitudes = new float[]{50.0f, 50.01f, 50.02f, 50.03f,
@@ -0,0 +1,118 @@
+package org.esa.snap.slope;
+
+import org.esa.snap.core.util.math.MathUtils;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static junit.framework.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class SlopeEngineTest {
+
+    @Test
+    public void testCompute_matchesPerPixelComputation() {
+        final int width = 29;
+        final int height = 41;
+        final float[] elevations = createElevations(width, height, 13);
+        final float[] slope = new float[width * height];
+        final float[] aspect = new float[width * height];
+        final float[] variance = new float[width * height];
+        // strips of at most 4 rows, computed by 3 threads
+        new SlopeEngine(GradientMethod.HORN, new ForkJoinPool(3), 4)
+                .compute(elevations, width, height, 30.0, 30.0, slope, aspect, variance);
+
+        final double[] window = new double[9];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                // the borders are extended by copying the edge pixels
+                for (int i = 0; i < 9; i++) {
+                    final int wx = Math.min(Math.max(x - 1 + i % 3, 0), width - 1);
+                    final int wy = Math.min(Math.max(y - 1 + i / 3, 0), height - 1);
+                    window[i] = elevations[wy * width + wx];
+                }
+                final float[] expected = SlopeReference.computeSlopeAspectVariance(window, 30.0);
+                final int index = y * width + x;
+                assertEquals((float) (expected[0] * MathUtils.RTOD), slope[index], 0.0f);
+                assertEquals((float) (expected[1] * MathUtils.RTOD), aspect[index], 0.0f);
+                assertEquals(expected[2], variance[index], 0.0f);
+            }
+        }
+    }
+
+    @Test
+    public void testCompute_withBuffers() {
+        final int width = 17;
+        final int height = 9;
+        final float[] elevations = createElevations(width, height, 14);
+        final float[] expectedSlope = new float[width * height];
+        final float[] expectedAspect = new float[width * height];
+        final SlopeEngine engine = new SlopeEngine(GradientMethod.ZEVENBERGEN_THORNE);
+        engine.compute(elevations, width, height, 20.0, 25.0, expectedSlope, expectedAspect, null);
+
+        // a direct elevation buffer starting at position 3, a heap slope buffer starting at position 2
+        final FloatBuffer elevationBuffer = ByteBuffer.allocateDirect(4 * (width * height + 3))
+                .order(ByteOrder.nativeOrder()).asFloatBuffer();
+        elevationBuffer.position(3);
+        elevationBuffer.put(elevations);
+        elevationBuffer.position(3);
+        final FloatBuffer slopeBuffer = FloatBuffer.allocate(width * height + 2);
+        slopeBuffer.position(2);
+        final FloatBuffer aspectBuffer = ByteBuffer.allocateDirect(4 * width * height)
+                .order(ByteOrder.nativeOrder()).asFloatBuffer();
+        engine.compute(elevationBuffer, width, height, 20.0, 25.0, slopeBuffer, aspectBuffer, null);
+
+        assertEquals(3, elevationBuffer.position());
+        assertEquals(2, slopeBuffer.position());
+        for (int i = 0; i < width * height; i++) {
+            assertEquals(expectedSlope[i], slopeBuffer.get(2 + i), 0.0f);
+            assertEquals(expectedAspect[i], aspectBuffer.get(i), 0.0f);
+        }
+    }
+
+    @Test
+    public void testCompute_withInvalidElevations() {
+        final int width = 6;
+        final int height = 5;
+        final float[] elevations = createElevations(width, height, 15);
+        elevations[2 * width + 4] = Float.NaN;
+        final float[] slope = new float[width * height];
+        new SlopeEngine(GradientMethod.HORN, ForkJoinPool.commonPool(), 1)
+                .compute(elevations, width, height, 30.0, 30.0, slope, null, null);
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                final boolean invalid = Math.abs(x - 4) <= 1 && Math.abs(y - 2) <= 1;
+                assertEquals(invalid, slope[y * width + x] == SlopeEngine.NO_DATA_VALUE);
+            }
+        }
+    }
+
+    @Test
+    public void testCompute_withIllegalArguments() {
+        final SlopeEngine engine = new SlopeEngine(GradientMethod.HORN);
+        try {
+            engine.compute(new float[4], 2, 3, 30.0, 30.0, new float[6], null, null);
+            fail("Elevations too small");
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            engine.compute(new float[6], 2, 3, 0.0, 30.0, new float[6], null, null);
+            fail("Pixel size not positive");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    private static float[] createElevations(int width, int height, long seed) {
+        final Random random = new Random(seed);
+        final float[] elevations = new float[width * height];
+        for (int i = 0; i < elevations.length; i++) {
+            elevations[i] = 100.0f + 300.0f * random.nextFloat();
+        }
+        return elevations;
+    }
+}
@@ -0,0 +1,38 @@
+package org.esa.snap.slope;
+
+import org.apache.commons.math3.stat.StatUtils;
+
+/**
+ * The straightforward per-pixel computation of slope, aspect and elevation variance with the
+ * {@link GradientMethod#HORN} method, which the row kernels are checked against.
+ */
+final class SlopeReference {
+
+    private SlopeReference() {
+    }
+
+    /**
+     * @param elev              - the 3x3 elevation window in row major order
+     * @param spatialResolution - the pixel size in metres
+     * @return slope and aspect in radians and the elevation variance
+     */
+    static float[] computeSlopeAspectVariance(double[] elev, double spatialResolution) {
+
+        double b = (elev[2] + 2 * elev[5] + elev[8] - elev[0] - 2 * elev[3] - elev[6]) / 8f;
+        double c = (elev[0] + 2 * elev[1] + elev[2] - elev[6] - 2 * elev[7] - elev[8]) / 8f;
+        float slope = (float) Math.atan(Math.sqrt(Math.pow(b / spatialResolution, 2) +
+                                                          Math.pow(c / spatialResolution, 2)));
+        float aspect = (float) Math.atan2(-b, -c);
+        if (aspect < 0.0f) {
+            // map from [-180, 180] into [0, 360], see e.g. https://www.e-education.psu.edu/geog480/node/490
+            aspect += 2.0 * Math.PI;
+        }
+        if (slope <= 0.0) {
+            aspect = Float.NaN;
+        }
+
+        final float variance = (float) StatUtils.variance(elev);
+
+        return new float[]{slope, aspect, variance};
+    }
+}
@@ -0,0 +1,154 @@
+package org.esa.snap.slope;
+
+import com.bc.ceres.core.ProgressMonitor;
+import org.esa.snap.core.dataio.ProductIO;
+import org.esa.snap.core.datamodel.Band;
+import org.esa.snap.core.datamodel.CrsGeoCoding;
+import org.esa.snap.core.datamodel.Mask;
+import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.core.datamodel.ProductData;
+import org.esa.snap.core.gpf.GPF;
+import org.esa.snap.core.util.io.FileUtils;
+import org.geotools.referencing.CRS;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.Color;
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static junit.framework.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class SlopeStatisticsProcessorTest {
+
+    private static final int WIDTH = 23;
+    private static final int HEIGHT = 17;
+
+    private File targetDirectory;
+    private Product product;
+    private Product operatorProduct;
+
+    @Before
+    public void setUp() throws Exception {
+        targetDirectory = new File("sao_statistics_test_out");
+        if (!targetDirectory.mkdirs()) {
+            fail("Unable to create test target directory");
+        }
+        GPF.getDefaultInstance().getOperatorSpiRegistry().addOperatorSpi(new SlopeCalculationOp.Spi());
+
+        product = new Product("SAO_Test", "sao_test", WIDTH, HEIGHT);
+        product.setSceneGeoCoding(
+                new CrsGeoCoding(CRS.decode("EPSG:32650"), WIDTH, HEIGHT, 699960.0, 4000020.0, 10.0, 10.0, 0.0, 0.0));
+        final Band elevationBand = new Band("elevation", ProductData.TYPE_INT16, WIDTH, HEIGHT);
+        final Band labelBand = new Band("label", ProductData.TYPE_INT32, WIDTH, HEIGHT);
+        final Random random = new Random(11);
+        final short[] elevationData = new short[WIDTH * HEIGHT];
+        final int[] labelData = new int[WIDTH * HEIGHT];
+        for (int i = 0; i < elevationData.length; i++) {
+            elevationData[i] = (short) (100 + random.nextInt(50));
+            labelData[i] = (i % WIDTH) / 8 + 10 * ((i / WIDTH) / 6);
+        }
+        // a void in the DEM
+        elevationData[5 * WIDTH + 7] = -32768;
+        elevationBand.setDataElems(elevationData);
+        elevationBand.setNoDataValue(-32768);
+        elevationBand.setNoDataValueUsed(true);
+        labelBand.setDataElems(labelData);
+        product.addBand(elevationBand);
+        product.addBand(labelBand);
+
+        final Map<String, Object> parameters = new HashMap<>();
+        parameters.put("outputBands", new String[]{SlopeCalculationOp.SLOPE_BAND_NAME,
+                SlopeCalculationOp.ASPECT_BAND_NAME});
+        operatorProduct = GPF.createProduct("SlopeCalculation", parameters, product);
+        ProductIO.writeProduct(operatorProduct, new File(targetDirectory, "sao_op_test.dim").getPath(),
+                               "BEAM-DIMAP");
+    }
+
+    @After
+    public void tearDown() {
+        GPF.getDefaultInstance().getOperatorSpiRegistry().removeOperatorSpi(new SlopeCalculationOp.Spi());
+        if (targetDirectory.isDirectory()) {
+            if (!FileUtils.deleteTree(targetDirectory)) {
+                fail("Unable to delete test directory");
+            }
+        }
+    }
+
+    @Test
+    public void testComputeStatistics_givesSameResultsAsOperator() throws Exception {
+        // a strip height which does not divide the raster height
+        final SlopeStatistics statistics =
+                new SlopeStatisticsProcessor(product.getBand("elevation"), GradientMethod.HORN, 3, 5)
+                        .computeStatistics(ProgressMonitor.NULL);
+
+        assertSameStatistics(computeOperatorStatistics(null, 0), statistics);
+        // the void and its eight neighbours are no-data
+        assertEquals(WIDTH * HEIGHT - 9, statistics.getPixelCount());
+    }
+
+    @Test
+    public void testComputeStatistics_perLabel() throws Exception {
+        final Band labelBand = product.getBand("label");
+        final Map<Integer, SlopeStatistics> statistics =
+                new SlopeStatisticsProcessor(product.getBand("elevation"), GradientMethod.HORN, 2, 4)
+                        .computeStatistics(labelBand, ProgressMonitor.NULL);
+
+        assertEquals(3 * 3, statistics.size());
+        for (Map.Entry<Integer, SlopeStatistics> entry : statistics.entrySet()) {
+            assertSameStatistics(computeOperatorStatistics(labelBand, entry.getKey()), entry.getValue());
+        }
+    }
+
+    @Test
+    public void testComputeStatistics_perMask() throws Exception {
+        final Mask mask = Mask.BandMathsType.create("low", null, WIDTH, HEIGHT, "label < 10", Color.RED, 0.5);
+        product.addMask(mask);
+        final Map<String, SlopeStatistics> statistics =
+                new SlopeStatisticsProcessor(product.getBand("elevation"), GradientMethod.HORN, 2, 4)
+                        .computeStatistics(new Mask[]{mask}, ProgressMonitor.NULL);
+
+        final SlopeStatistics expected = new SlopeStatistics();
+        for (int label = 0; label < 3; label++) {
+            expected.merge(computeOperatorStatistics(product.getBand("label"), label));
+        }
+        assertEquals(1, statistics.size());
+        assertSameStatistics(expected, statistics.get("low"));
+    }
+
+    private SlopeStatistics computeOperatorStatistics(Band labelBand, int label) {
+        final Band slopeBand = operatorProduct.getBand(SlopeCalculationOp.SLOPE_BAND_NAME);
+        final Band aspectBand = operatorProduct.getBand(SlopeCalculationOp.ASPECT_BAND_NAME);
+        final SlopeStatistics statistics = new SlopeStatistics();
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                final float slope = slopeBand.getSampleFloat(x, y);
+                if (slope != SlopeCalculationOp.NO_DATA_VALUE &&
+                        (labelBand == null || labelBand.getSampleFloat(x, y) == label)) {
+                    statistics.accumulate(slope, aspectBand.getSampleFloat(x, y));
+                }
+            }
+        }
+        return statistics;
+    }
+
+    private static void assertSameStatistics(SlopeStatistics expected, SlopeStatistics actual) {
+        assertEquals(expected.getPixelCount(), actual.getPixelCount());
+        assertEquals(expected.getFlatPixelCount(), actual.getFlatPixelCount());
+        assertEquals(expected.getMean(), actual.getMean(), 1e-10);
+        assertEquals(expected.getStandardDeviation(), actual.getStandardDeviation(), 1e-10);
+        assertEquals(expected.getMin(), actual.getMin(), 0.0);
+        assertEquals(expected.getMax(), actual.getMax(), 0.0);
+        assertEquals(expected.getPercentile(90.0), actual.getPercentile(90.0), 0.0);
+        for (int i = 0; i < SlopeStatistics.SLOPE_BIN_COUNT; i++) {
+            assertEquals(expected.getSlopeHistogram()[i], actual.getSlopeHistogram()[i]);
+        }
+        for (int i = 0; i < SlopeStatistics.ASPECT_SECTOR_COUNT; i++) {
+            assertEquals(expected.getAspectRose()[i], actual.getAspectRose()[i]);
+        }
+    }
+}
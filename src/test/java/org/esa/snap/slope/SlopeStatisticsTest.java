@@ -0,0 +1,98 @@
+package org.esa.snap.slope;
+
+import org.apache.commons.math3.stat.StatUtils;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static junit.framework.Assert.assertEquals;
+
+public class SlopeStatisticsTest {
+
+    @Test
+    public void testAccumulate() {
+        final SlopeStatistics statistics = new SlopeStatistics();
+        statistics.accumulate(10.2f, 0.0f);
+        statistics.accumulate(20.4f, 95.0f);
+        statistics.accumulate(30.6f, 355.0f);
+        statistics.accumulate(0.0f, Float.NaN);
+
+        assertEquals(4, statistics.getPixelCount());
+        assertEquals(1, statistics.getFlatPixelCount());
+        assertEquals(15.3, statistics.getMean(), 1e-5);
+        assertEquals(StatUtils.variance(new double[]{10.2f, 20.4f, 30.6f, 0.0f}),
+                     Math.pow(statistics.getStandardDeviation(), 2), 1e-6);
+        assertEquals(0.0, statistics.getMin(), 0.0);
+        assertEquals(30.6f, statistics.getMax(), 0.0);
+
+        final long[] slopeHistogram = statistics.getSlopeHistogram();
+        assertEquals(1, slopeHistogram[0]);
+        assertEquals(1, slopeHistogram[20]);
+        assertEquals(1, slopeHistogram[40]);
+        assertEquals(1, slopeHistogram[61]);
+        final long[] aspectRose = statistics.getAspectRose();
+        assertEquals(2, aspectRose[0]);
+        assertEquals(1, aspectRose[4]);
+    }
+
+    @Test
+    public void testGetSlopeBinAndAspectSector() {
+        assertEquals(0, SlopeStatistics.getSlopeBin(0.0f));
+        assertEquals(1, SlopeStatistics.getSlopeBin(0.5f));
+        assertEquals(SlopeStatistics.SLOPE_BIN_COUNT - 1, SlopeStatistics.getSlopeBin(90.0f));
+
+        assertEquals(0, SlopeStatistics.getAspectSector(0.0f));
+        assertEquals(0, SlopeStatistics.getAspectSector(11.0f));
+        assertEquals(1, SlopeStatistics.getAspectSector(11.5f));
+        assertEquals(8, SlopeStatistics.getAspectSector(180.0f));
+        assertEquals(15, SlopeStatistics.getAspectSector(348.0f));
+        assertEquals(0, SlopeStatistics.getAspectSector(349.0f));
+        assertEquals(0, SlopeStatistics.getAspectSector(360.0f));
+    }
+
+    @Test
+    public void testMerge_givesSameResultsAsAccumulate() {
+        final Random random = new Random(3);
+        final SlopeStatistics all = new SlopeStatistics();
+        final SlopeStatistics part1 = new SlopeStatistics();
+        final SlopeStatistics part2 = new SlopeStatistics();
+        for (int i = 0; i < 1000; i++) {
+            final float slope = 45.0f * random.nextFloat();
+            final float aspect = 360.0f * random.nextFloat();
+            all.accumulate(slope, aspect);
+            (i < 300 ? part1 : part2).accumulate(slope, aspect);
+        }
+        final SlopeStatistics merged = new SlopeStatistics();
+        merged.merge(part1);
+        merged.merge(new SlopeStatistics());
+        merged.merge(part2);
+
+        assertEquals(all.getPixelCount(), merged.getPixelCount());
+        assertEquals(all.getMean(), merged.getMean(), 1e-10);
+        assertEquals(all.getStandardDeviation(), merged.getStandardDeviation(), 1e-10);
+        assertEquals(all.getMin(), merged.getMin(), 0.0);
+        assertEquals(all.getMax(), merged.getMax(), 0.0);
+        assertEquals(all.getPercentile(50.0), merged.getPercentile(50.0), 0.0);
+        for (int i = 0; i < SlopeStatistics.ASPECT_SECTOR_COUNT; i++) {
+            assertEquals(all.getAspectRose()[i], merged.getAspectRose()[i]);
+        }
+    }
+
+    @Test
+    public void testGetPercentile() {
+        final Random random = new Random(4);
+        final SlopeStatistics statistics = new SlopeStatistics();
+        final double[] slopes = new double[10000];
+        for (int i = 0; i < slopes.length; i++) {
+            slopes[i] = 60.0f * random.nextFloat();
+            statistics.accumulate((float) slopes[i], 0.0f);
+        }
+        for (double percentile : new double[]{1.0, 25.0, 50.0, 90.0, 99.0}) {
+            assertEquals(StatUtils.percentile(slopes, percentile), statistics.getPercentile(percentile),
+                         SlopeStatistics.SLOPE_BIN_WIDTH);
+        }
+        assertEquals(statistics.getMin(), statistics.getPercentile(0.0), 0.0);
+        assertEquals(statistics.getMax(), statistics.getPercentile(100.0), 0.0);
+        assertEquals(Double.NaN, new SlopeStatistics().getPercentile(50.0));
+    }
+}
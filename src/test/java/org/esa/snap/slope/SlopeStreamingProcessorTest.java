@@ -0,0 +1,135 @@
+package org.esa.snap.slope;
+
+import com.bc.ceres.core.ProgressMonitor;
+import org.esa.snap.core.dataio.ProductIO;
+import org.esa.snap.core.datamodel.Band;
+import org.esa.snap.core.datamodel.CrsGeoCoding;
+import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.core.datamodel.ProductData;
+import org.esa.snap.core.gpf.GPF;
+import org.esa.snap.core.util.io.FileUtils;
+import org.geotools.referencing.CRS;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Random;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class SlopeStreamingProcessorTest {
+
+    private File targetDirectory;
+
+    @Before
+    public void setUp() {
+        targetDirectory = new File("sao_streaming_test_out");
+        if (!targetDirectory.mkdirs()) {
+            fail("Unable to create test target directory");
+        }
+        GPF.getDefaultInstance().getOperatorSpiRegistry().addOperatorSpi(new SlopeCalculationOp.Spi());
+    }
+
+    @After
+    public void tearDown() {
+        GPF.getDefaultInstance().getOperatorSpiRegistry().removeOperatorSpi(new SlopeCalculationOp.Spi());
+        if (targetDirectory.isDirectory()) {
+            if (!FileUtils.deleteTree(targetDirectory)) {
+                fail("Unable to delete test directory");
+            }
+        }
+    }
+
+    @Test
+    public void testProcess_givesSameResultsAsOperator() throws Exception {
+        final int width = 23;
+        final int height = 17;
+        final Product product = createProduct(width, height);
+        final Band elevationBand = product.getBand("elevation");
+
+        // a strip height which does not divide the raster height
+        final File targetFile = new File(targetDirectory, "sao_streaming_test.dim");
+        new SlopeStreamingProcessor(elevationBand, 5).process(targetFile, "BEAM-DIMAP", ProgressMonitor.NULL);
+
+        final Product operatorProduct = GPF.createProduct("SlopeCalculation", new HashMap<>(), product);
+        ProductIO.writeProduct(operatorProduct, new File(targetDirectory, "sao_op_test.dim").getPath(),
+                               "BEAM-DIMAP");
+        final Product streamedProduct = ProductIO.readProduct(targetFile);
+        try {
+            for (String bandName : new String[]{SlopeCalculationOp.SLOPE_BAND_NAME,
+                    SlopeCalculationOp.ASPECT_BAND_NAME, SlopeCalculationOp.VARIANCE_BAND_NAME}) {
+                final Band expectedBand = operatorProduct.getBand(bandName);
+                final Band streamedBand = streamedProduct.getBand(bandName);
+                streamedBand.readRasterDataFully();
+                for (int y = 0; y < height; y++) {
+                    for (int x = 0; x < width; x++) {
+                        assertEquals(expectedBand.getSampleFloat(x, y), streamedBand.getSampleFloat(x, y), 0.0f);
+                    }
+                }
+            }
+        } finally {
+            streamedProduct.dispose();
+        }
+    }
+
+    @Test
+    public void testProcess_withGradientMethodAndOutputBands() throws Exception {
+        final int width = 23;
+        final int height = 17;
+        final Product product = createProduct(width, height);
+        final Band elevationBand = product.getBand("elevation");
+
+        final File targetFile = new File(targetDirectory, "sao_streaming_test.dim");
+        new SlopeStreamingProcessor(elevationBand, GradientMethod.EVANS_YOUNG,
+                                    new String[]{SlopeCalculationOp.SLOPE_BAND_NAME}, 5)
+                .process(targetFile, "BEAM-DIMAP", ProgressMonitor.NULL);
+
+        final HashMap<String, Object> parameters = new HashMap<>();
+        parameters.put("gradientMethod", GradientMethod.EVANS_YOUNG);
+        parameters.put("outputBands", new String[]{SlopeCalculationOp.SLOPE_BAND_NAME});
+        final Product operatorProduct = GPF.createProduct("SlopeCalculation", parameters, product);
+        ProductIO.writeProduct(operatorProduct, new File(targetDirectory, "sao_op_test.dim").getPath(),
+                               "BEAM-DIMAP");
+        final Product streamedProduct = ProductIO.readProduct(targetFile);
+        try {
+            assertNull(streamedProduct.getBand(SlopeCalculationOp.ASPECT_BAND_NAME));
+            assertNull(streamedProduct.getBand(SlopeCalculationOp.VARIANCE_BAND_NAME));
+            final Band expectedBand = operatorProduct.getBand(SlopeCalculationOp.SLOPE_BAND_NAME);
+            final Band streamedBand = streamedProduct.getBand(SlopeCalculationOp.SLOPE_BAND_NAME);
+            streamedBand.readRasterDataFully();
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    assertEquals(expectedBand.getSampleFloat(x, y), streamedBand.getSampleFloat(x, y), 0.0f);
+                }
+            }
+        } finally {
+            streamedProduct.dispose();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructor_withUnsupportedOutputBand() throws Exception {
+        final Product product = createProduct(5, 5);
+        new SlopeStreamingProcessor(product.getBand("elevation"), GradientMethod.HORN,
+                                    new String[]{SlopeCalculationOp.HILLSHADE_BAND_NAME}, 5);
+    }
+
+    private static Product createProduct(int width, int height) throws Exception {
+        final Product product = new Product("SAO_Test", "sao_test", width, height);
+        product.setSceneGeoCoding(
+                new CrsGeoCoding(CRS.decode("EPSG:32650"), width, height, 699960.0, 4000020.0, 10.0, 10.0, 0.0, 0.0));
+        final Band elevationBand = new Band("elevation", ProductData.TYPE_INT16, width, height);
+        final Random random = new Random(5);
+        final short[] elevationData = new short[width * height];
+        for (int i = 0; i < elevationData.length; i++) {
+            elevationData[i] = (short) (100 + random.nextInt(50));
+        }
+        elevationBand.setDataElems(elevationData);
+        product.addBand(elevationBand);
+        return product;
+    }
+}
@@ -0,0 +1,120 @@
+package org.esa.snap.slope;
+
+import org.esa.snap.core.util.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.fail;
+
+public class SlopeTileCacheTest {
+
+    private File cacheDirectory;
+
+    @Before
+    public void setUp() {
+        cacheDirectory = new File("sao_tile_cache_test");
+        if (!cacheDirectory.mkdirs()) {
+            fail("Unable to create test cache directory");
+        }
+    }
+
+    @After
+    public void tearDown() {
+        if (cacheDirectory.isDirectory()) {
+            if (!FileUtils.deleteTree(cacheDirectory)) {
+                fail("Unable to delete test directory");
+            }
+        }
+    }
+
+    @Test
+    public void testComputeKey() {
+        final float[] elevations = {10.0f, 11.0f, 12.0f, 13.0f, 14.0f, 15.0f, 16.0f, 17.0f, 18.0f, Float.NaN};
+        final double[] pixelSizes = {30.0, 30.0, 30.0};
+        final String key = SlopeTileCache.computeKey("p", elevations, 0, 3, 3, 3, pixelSizes, pixelSizes, 1, 1);
+        assertEquals(64, key.length());
+        assertEquals(key, SlopeTileCache.computeKey("p", elevations, 0, 3, 3, 3, pixelSizes, pixelSizes, 1, 1));
+        assertNotEquals(key, SlopeTileCache.computeKey("q", elevations, 0, 3, 3, 3, pixelSizes, pixelSizes, 1, 1));
+        assertNotEquals(key, SlopeTileCache.computeKey("p", elevations, 1, 3, 3, 3, pixelSizes, pixelSizes, 1, 1));
+        final double[] otherPixelSizes = {30.0, 29.0, 30.0};
+        assertNotEquals(key, SlopeTileCache.computeKey("p", elevations, 0, 3, 3, 3, pixelSizes, otherPixelSizes, 1, 1));
+        // the position of the tile does not matter
+        assertEquals(key, SlopeTileCache.computeKey("p", elevations, 0, 3, 3, 3, pixelSizes, pixelSizes, 2, 1));
+    }
+
+    @Test
+    public void testPutAndGet() throws Exception {
+        final SlopeTileCache cache = new SlopeTileCache(cacheDirectory, 1024);
+        assertNull(cache.get("a", 8));
+        cache.put("a", createEntry(8, 1.5f));
+        final ByteBuffer entry = cache.get("a", 8);
+        assertNotNull(entry);
+        assertEquals(1.5f, entry.getFloat(0), 0.0f);
+        assertEquals(1.5f, entry.getFloat(4), 0.0f);
+        // an entry of another size is not used
+        assertNull(cache.get("a", 12));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+
+        // entries persist
+        final SlopeTileCache reopenedCache = new SlopeTileCache(cacheDirectory, 1024);
+        assertEquals(8, reopenedCache.getSize());
+        assertNotNull(reopenedCache.get("a", 8));
+    }
+
+    @Test
+    public void testPut_evictsLeastRecentlyUsedEntries() throws Exception {
+        final SlopeTileCache cache = new SlopeTileCache(cacheDirectory, 24);
+        cache.put("a", createEntry(8, 1.0f));
+        cache.put("b", createEntry(8, 2.0f));
+        cache.put("c", createEntry(8, 3.0f));
+        assertNotNull(cache.get("a", 8));
+        cache.put("d", createEntry(8, 4.0f));
+
+        assertEquals(24, cache.getSize());
+        assertNotNull(cache.get("a", 8));
+        assertNull(cache.get("b", 8));
+        assertNotNull(cache.get("c", 8));
+        assertNotNull(cache.get("d", 8));
+        assertEquals(false, new File(cacheDirectory, "b.tile").exists());
+
+        // entries larger than the cache are not kept
+        cache.put("e", createEntry(32, 5.0f));
+        assertNull(cache.get("e", 32));
+        assertEquals(24, cache.getSize());
+    }
+
+    @Test
+    public void testGetInstance_enlargesOpenCache() throws Exception {
+        final File directory = new File(cacheDirectory, "shared");
+        final SlopeTileCache cache = SlopeTileCache.getInstance(directory, 8);
+        cache.put("a", createEntry(16, 1.0f));
+        assertNull(cache.get("a", 16));
+
+        assertSame(cache, SlopeTileCache.getInstance(directory, 16));
+        cache.put("a", createEntry(16, 1.0f));
+        assertNotNull(cache.get("a", 16));
+        // a smaller size does not shrink the cache
+        SlopeTileCache.getInstance(directory, 8);
+        assertEquals(16, cache.getSize());
+    }
+
+    private static ByteBuffer createEntry(int size, float value) {
+        final ByteBuffer entry = ByteBuffer.allocate(size).order(ByteOrder.nativeOrder());
+        while (entry.hasRemaining()) {
+            entry.putFloat(value);
+        }
+        entry.flip();
+        return entry;
+    }
+}
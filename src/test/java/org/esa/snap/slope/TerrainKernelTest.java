@@ -0,0 +1,269 @@
+package org.esa.snap.slope;
+
+import org.apache.commons.math3.stat.StatUtils;
+import org.esa.snap.core.util.math.MathUtils;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static junit.framework.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TerrainKernelTest {
+
+    @Test
+    public void testSlopeReference_computeSlopeAspectVariance() {
+        double[] altitude = new double[]{
+                10.0f, 10.0f, 15.0f,
+                10.0f, 10.0f, 15.0f,
+                12.0f, 12.0f, 14.0f};
+        final float[] slopeAndAspect_7 = SlopeReference.computeSlopeAspectVariance(altitude, 10);
+        double[] altitude2 = new double[]{
+                14.0f, 12.0f, 14.0f,
+                14.0f, 12.0f, 14.0f,
+                14.0f, 12.0f, 14.0f};
+        final float[] slopeAndAspect_27 = SlopeReference.computeSlopeAspectVariance(altitude2, 10);
+
+        assertEquals(slopeAndAspect_7[0], 0.21798114, 1e-7);
+        assertEquals(slopeAndAspect_27[0], 0.0, 1e-7);
+
+        assertEquals(slopeAndAspect_7[1], 4.9984403, 1e-7);
+        assertTrue(Double.isNaN(slopeAndAspect_27[1]));
+
+        assertEquals(slopeAndAspect_7[2], 4.75, 1e-6);
+    }
+
+    @Test
+    public void testComputeRow_matchesPerPixelComputation() {
+        final int width = 37;
+        final int height = 23;
+        final Random random = new Random(4711);
+        final float[] elevation = new float[width * height];
+        for (int i = 0; i < elevation.length; i++) {
+            elevation[i] = random.nextInt(8) == 0 ? 120.0f : 100.0f + 500.0f * random.nextFloat();
+        }
+        final float[] slope = new float[(width - 2) * (height - 2)];
+        final float[] aspect = new float[(width - 2) * (height - 2)];
+        final float[] variance = new float[(width - 2) * (height - 2)];
+        final TerrainKernel kernel = new TerrainKernel(GradientMethod.HORN, width - 2, slope, aspect, variance);
+        for (int y = 1; y < height - 1; y++) {
+            kernel.computeRow(elevation, (y - 1) * width, y * width, (y + 1) * width, 30.0, 30.0,
+                              (y - 1) * (width - 2));
+        }
+
+        final double[] window = new double[9];
+        for (int y = 1; y < height - 1; y++) {
+            for (int x = 1; x < width - 1; x++) {
+                for (int i = 0; i < 9; i++) {
+                    window[i] = elevation[(y - 1 + i / 3) * width + x - 1 + i % 3];
+                }
+                final float[] expected = SlopeReference.computeSlopeAspectVariance(window, 30.0);
+                final int index = (y - 1) * (width - 2) + x - 1;
+                assertEquals((float) (expected[0] * MathUtils.RTOD), slope[index], 0.0f);
+                assertEquals((float) (expected[1] * MathUtils.RTOD), aspect[index], 0.0f);
+                assertEquals(expected[2], variance[index], 0.0f);
+            }
+        }
+    }
+
+    @Test
+    public void testComputeRow_gradientMethods() {
+        final float[] elevation = new float[]{
+                10.0f, 10.0f, 15.0f,
+                10.0f, 10.0f, 15.0f,
+                12.0f, 12.0f, 14.0f};
+
+        assertSlopeAndAspect(GradientMethod.HORN, elevation, 12.489399f, 286.38954f);
+        assertSlopeAndAspect(GradientMethod.ZEVENBERGEN_THORNE, elevation, 15.069956f, 291.80141f);
+        assertSlopeAndAspect(GradientMethod.EVANS_YOUNG, elevation, 11.648635f, 284.03624f);
+    }
+
+    @Test
+    public void testComputeRow_gradientMethodsAgreeOnPlane() {
+        // a plane rising by 3 m per pixel towards East and by 2 m per pixel towards North
+        final float[] elevation = new float[]{
+                2.0f, 5.0f, 8.0f,
+                0.0f, 3.0f, 6.0f,
+                -2.0f, 1.0f, 4.0f};
+        final float expectedSlope = (float) Math.toDegrees(Math.atan(Math.sqrt(0.3 * 0.3 + 0.2 * 0.2)));
+        final float expectedAspect = (float) Math.toDegrees(Math.atan2(-3.0, -2.0) + 2.0 * Math.PI);
+
+        for (GradientMethod method : GradientMethod.values()) {
+            assertSlopeAndAspect(method, elevation, expectedSlope, expectedAspect);
+        }
+    }
+
+    @Test
+    public void testComputeRow_hillshade() {
+        // the plane rises towards East, so that its normal is tilted towards West
+        final float[] elevation = new float[]{
+                0.0f, 10.0f, 20.0f,
+                0.0f, 10.0f, 20.0f,
+                0.0f, 10.0f, 20.0f};
+        final float[] hillshade = new float[1];
+        final TerrainKernel kernel = new TerrainKernel(GradientMethod.HORN, 1, null, null, null);
+
+        kernel.setHillshade(hillshade, 270.0, 45.0);
+        kernel.computeRow(elevation, 0, 3, 6, 10.0, 10.0, 0);
+        assertEquals(1.0f, hillshade[0], 1e-6f);
+
+        kernel.setHillshade(hillshade, 90.0, 45.0);
+        kernel.computeRow(elevation, 0, 3, 6, 10.0, 10.0, 0);
+        assertEquals(0.0f, hillshade[0], 1e-6f);
+
+        kernel.setHillshade(hillshade, 0.0, 30.0);
+        kernel.computeRow(elevation, 0, 3, 6, 10.0, 10.0, 0);
+        assertEquals((float) (0.5 / Math.sqrt(2.0)), hillshade[0], 1e-6f);
+    }
+
+    @Test
+    public void testComputeRow_curvatures() {
+        final float[] profileCurvature = new float[1];
+        final float[] planCurvature = new float[1];
+        final TerrainKernel kernel = new TerrainKernel(GradientMethod.HORN, 1, null, null, null);
+        kernel.setCurvatures(profileCurvature, planCurvature);
+
+        // z = x^2 / 2 around x = 2, a valley with straight contour lines
+        kernel.computeRow(new float[]{
+                0.5f, 2.0f, 4.5f,
+                0.5f, 2.0f, 4.5f,
+                0.5f, 2.0f, 4.5f}, 0, 3, 6, 1.0, 1.0, 0);
+        assertEquals((float) (-1.0 / Math.pow(5.0, 1.5)), profileCurvature[0], 1e-6f);
+        assertEquals(0.0f, planCurvature[0], 1e-6f);
+
+        // z = x + y^2 / 2 around y = 0, straight profile with contour lines bent towards the higher side
+        kernel.computeRow(new float[]{
+                -0.5f, 0.5f, 1.5f,
+                -1.0f, 0.0f, 1.0f,
+                -0.5f, 0.5f, 1.5f}, 0, 3, 6, 1.0, 1.0, 0);
+        assertEquals(0.0f, profileCurvature[0], 1e-6f);
+        assertEquals(-1.0f, planCurvature[0], 1e-6f);
+
+        // z = -(x^2 + y^2) / 2 around x = 1, the flank of a dome
+        kernel.computeRow(new float[]{
+                -0.5f, -1.0f, -2.5f,
+                0.0f, -0.5f, -2.0f,
+                -0.5f, -1.0f, -2.5f}, 0, 3, 6, 1.0, 1.0, 0);
+        assertEquals((float) (1.0 / Math.pow(2.0, 1.5)), profileCurvature[0], 1e-6f);
+        assertEquals(1.0f, planCurvature[0], 1e-6f);
+
+        // curvatures are undefined for flat pixels
+        kernel.computeRow(new float[]{
+                1.0f, 1.0f, 1.0f,
+                1.0f, 0.0f, 1.0f,
+                1.0f, 1.0f, 1.0f}, 0, 3, 6, 1.0, 1.0, 0);
+        assertEquals(true, Float.isNaN(profileCurvature[0]));
+        assertEquals(true, Float.isNaN(planCurvature[0]));
+    }
+
+    @Test
+    public void testComputeRow_ruggedness() {
+        final float[] elevation = new float[]{
+                1.0f, 2.0f, 3.0f, 4.0f,
+                4.0f, 5.0f, 6.0f, 7.0f,
+                7.0f, 8.0f, 9.0f, 1.0f};
+        final float[] ruggedness = new float[2];
+        final float[] topographicPosition = new float[2];
+        final TerrainKernel kernel = new TerrainKernel(GradientMethod.HORN, 2, null, null, null);
+        kernel.setRuggedness(ruggedness, topographicPosition);
+        kernel.computeRow(elevation, 0, 4, 8, 30.0, 30.0, 0);
+
+        assertEquals((float) Math.sqrt(16 + 9 + 4 + 1 + 1 + 4 + 9 + 16), ruggedness[0], 1e-6f);
+        assertEquals(0.0f, topographicPosition[0], 1e-6f);
+        assertEquals((float) Math.sqrt(16 + 9 + 4 + 1 + 1 + 4 + 9 + 25), ruggedness[1], 1e-6f);
+        assertEquals(6.0f - 39.0f / 8.0f, topographicPosition[1], 1e-6f);
+    }
+
+    @Test
+    public void testComputeWindowVariance() {
+        final int width = 40;
+        final int height = 30;
+        final Random random = new Random(815);
+        final float[] elevation = new float[width * height];
+        for (int i = 0; i < elevation.length; i++) {
+            elevation[i] = 2000.0f + 300.0f * random.nextFloat();
+        }
+        for (int windowSize : new int[]{3, 5, 11}) {
+            final int targetWidth = width - windowSize + 1;
+            final int targetHeight = height - windowSize + 1;
+            final float[] variance = new float[targetWidth * targetHeight];
+            TerrainKernel.computeWindowVariance(elevation, 0, width, width, height, windowSize,
+                                                variance, 0, targetWidth, SlopeCalculationOp.NO_DATA_VALUE);
+
+            final double[] window = new double[windowSize * windowSize];
+            for (int y = 0; y < targetHeight; y++) {
+                for (int x = 0; x < targetWidth; x++) {
+                    for (int i = 0; i < window.length; i++) {
+                        window[i] = elevation[(y + i / windowSize) * width + x + i % windowSize];
+                    }
+                    final double expected = StatUtils.variance(window);
+                    assertEquals(expected, variance[y * targetWidth + x], expected * 1e-5);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testFillInvalid() {
+        final float[] elevation = new float[]{
+                1.0f, 2.0f, 3.0f, 4.0f, 5.0f, 6.0f,
+                2.0f, 3.0f, 4.0f, 5.0f, 6.0f, 7.0f,
+                3.0f, 4.0f, 5.0f, 6.0f, 7.0f, Float.NaN};
+        final float[] slope = new float[4];
+        final float[] variance = new float[4];
+        final float[] ruggedness = new float[4];
+        final TerrainKernel kernel = new TerrainKernel(GradientMethod.HORN, 4, slope, null, variance);
+        kernel.setRuggedness(ruggedness, null);
+        kernel.computeRow(elevation, 0, 6, 12, 30.0, 30.0, 0);
+        kernel.fillInvalid(elevation, 0, 6, 12, 0, -9999.0f);
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(false, Float.isNaN(slope[i]) || slope[i] == -9999.0f);
+            assertEquals(false, Float.isNaN(variance[i]) || variance[i] == -9999.0f);
+            assertEquals(false, Float.isNaN(ruggedness[i]) || ruggedness[i] == -9999.0f);
+        }
+        assertEquals(-9999.0f, slope[3]);
+        assertEquals(-9999.0f, variance[3]);
+        assertEquals(-9999.0f, ruggedness[3]);
+    }
+
+    @Test
+    public void testComputeWindowVariance_withInvalidElevations() {
+        final int width = 12;
+        final int height = 10;
+        final float[] elevation = new float[width * height];
+        for (int i = 0; i < elevation.length; i++) {
+            elevation[i] = i % 7;
+        }
+        elevation[0] = Float.NaN;
+        elevation[6 * width + 8] = Float.NaN;
+        final int windowSize = 5;
+        final int targetWidth = width - windowSize + 1;
+        final int targetHeight = height - windowSize + 1;
+        final float[] variance = new float[targetWidth * targetHeight];
+        TerrainKernel.computeWindowVariance(elevation, 0, width, width, height, windowSize,
+                                            variance, 0, targetWidth, -9999.0f);
+
+        final double[] window = new double[windowSize * windowSize];
+        for (int y = 0; y < targetHeight; y++) {
+            for (int x = 0; x < targetWidth; x++) {
+                boolean invalid = false;
+                for (int i = 0; i < window.length; i++) {
+                    window[i] = elevation[(y + i / windowSize) * width + x + i % windowSize];
+                    invalid |= Double.isNaN(window[i]);
+                }
+                final float expected = invalid ? -9999.0f : (float) StatUtils.variance(window);
+                assertEquals(expected, variance[y * targetWidth + x], 1e-4f);
+            }
+        }
+    }
+
+    private static void assertSlopeAndAspect(GradientMethod method, float[] elevation,
+                                             float expectedSlope, float expectedAspect) {
+        final float[] slope = new float[1];
+        final float[] aspect = new float[1];
+        new TerrainKernel(method, 1, slope, aspect, null).computeRow(elevation, 0, 3, 6, 10.0, 10.0, 0);
+        assertEquals(expectedSlope, slope[0], 1e-5f);
+        assertEquals(expectedAspect, aspect[0], 1e-4f);
+    }
+}
@@ -0,0 +1,73 @@
+package org.esa.snap.slope;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static junit.framework.Assert.assertEquals;
+
+public class VectorKernelTest {
+
+    // the bound of the atan approximation in degrees, plus float rounding of angles up to 360 degrees
+    private static final float ANGLE_TOLERANCE = 2.0e-6f + 3.0e-5f;
+
+    @Test
+    public void testCreate_disabledByDefault() {
+        if (System.getProperty(VectorKernel.ENABLED_PROPERTY) == null) {
+            assertEquals(null, VectorKernel.create());
+        }
+    }
+
+    @Test
+    public void testComputeRow_matchesScalarLoops() {
+        for (GradientMethod gradientMethod : GradientMethod.values()) {
+            // a width which is no multiple of the vector length, and non-square pixels
+            assertMatchesScalarLoops(gradientMethod, 37, 30.0, 20.0);
+            assertMatchesScalarLoops(gradientMethod, 5, 1.0, 1.0);
+        }
+    }
+
+    private static void assertMatchesScalarLoops(GradientMethod gradientMethod, int width,
+                                                 double pixelSizeX, double pixelSizeY) {
+        final VectorKernel vectorKernel = VectorKernel.createIfSupported();
+        if (vectorKernel == null) {
+            // the JVM was started without the jdk.incubator.vector module
+            return;
+        }
+        final int height = 5;
+        final int stride = width + 2;
+        final Random random = new Random(23);
+        final float[] elevations = new float[stride * (height + 2)];
+        for (int i = 0; i < elevations.length; i++) {
+            // steep terrain, and flat terrain in the last rows
+            elevations[i] = i < stride * 4 ? 100.0f + 300.0f * random.nextFloat() : 50.0f;
+        }
+        final float[] expectedSlope = new float[width * height];
+        final float[] expectedAspect = new float[width * height];
+        final float[] expectedVariance = new float[width * height];
+        final float[] slope = new float[width * height];
+        final float[] aspect = new float[width * height];
+        final float[] variance = new float[width * height];
+        final TerrainKernel scalarKernel =
+                new TerrainKernel(gradientMethod, width, expectedSlope, expectedAspect, expectedVariance, null);
+        final TerrainKernel kernel =
+                new TerrainKernel(gradientMethod, width, slope, aspect, variance, vectorKernel);
+        for (int y = 0; y < height; y++) {
+            final int center = (y + 1) * stride;
+            scalarKernel.computeRow(elevations, center - stride, center, center + stride, pixelSizeX, pixelSizeY,
+                                    y * width);
+            kernel.computeRow(elevations, center - stride, center, center + stride, pixelSizeX, pixelSizeY,
+                              y * width);
+        }
+
+        for (int i = 0; i < width * height; i++) {
+            assertEquals(expectedSlope[i], slope[i], ANGLE_TOLERANCE);
+            if (Float.isNaN(expectedAspect[i])) {
+                assertEquals(true, Float.isNaN(aspect[i]));
+            } else {
+                assertEquals(expectedAspect[i], aspect[i], ANGLE_TOLERANCE);
+            }
+            assertEquals(expectedVariance[i], variance[i], 0.0f);
+        }
+    }
+}